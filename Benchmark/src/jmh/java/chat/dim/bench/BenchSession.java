@@ -0,0 +1,134 @@
+/* license: https://mit-license.org
+ *
+ *  DIM-SDK : Decentralized Instant Messaging Software Development Kit
+ *
+ *                                Written in 2026 by Moky <albert.moky@gmail.com>
+ *
+ * ==============================================================================
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2026 Albert Moky
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * ==============================================================================
+ */
+package chat.dim.bench;
+
+import java.net.SocketAddress;
+import java.util.ArrayList;
+import java.util.Date;
+import java.util.List;
+
+import chat.dim.Session;
+import chat.dim.dbi.SessionDBI;
+import chat.dim.protocol.Content;
+import chat.dim.protocol.ID;
+import chat.dim.protocol.InstantMessage;
+import chat.dim.protocol.ReliableMessage;
+import chat.dim.queue.MessageQueue;
+import chat.dim.queue.MessageWrapper;
+import chat.dim.type.Pair;
+
+/**
+ *  Session without network
+ *  ~~~~~~~~~~~~~~~~~~~~~~~
+ *
+ *  Outgoing packages go into the message queue only,
+ *  call 'drain()' to empty it after each measurement.
+ */
+public class BenchSession implements Session {
+
+    private final MessageQueue queue = new MessageQueue();
+
+    private ID identifier = null;
+    private boolean active = true;
+
+    public MessageQueue getQueue() {
+        return queue;
+    }
+
+    public int drain() {
+        int count = 0;
+        MessageWrapper wrapper = queue.next();
+        while (wrapper != null) {
+            ++count;
+            wrapper = queue.next();
+        }
+        return count;
+    }
+
+    @Override
+    public SessionDBI getDatabase() {
+        return null;
+    }
+
+    @Override
+    public SocketAddress getRemoteAddress() {
+        return null;
+    }
+
+    @Override
+    public String getSessionKey() {
+        return null;
+    }
+
+    @Override
+    public boolean setIdentifier(ID user) {
+        identifier = user;
+        return true;
+    }
+
+    @Override
+    public ID getIdentifier() {
+        return identifier;
+    }
+
+    @Override
+    public boolean setActive(boolean flag, Date when) {
+        active = flag;
+        return true;
+    }
+
+    @Override
+    public boolean isActive() {
+        return active;
+    }
+
+    @Override
+    public boolean queueMessagePackage(ReliableMessage rMsg, byte[] data, int priority) {
+        List<byte[]> fragments = new ArrayList<>();
+        fragments.add(data);
+        return queue.append(rMsg, new PackageShip(rMsg.get("sn"), priority, fragments));
+    }
+
+    @Override
+    public Pair<InstantMessage, ReliableMessage> sendContent(Content content, ID sender, ID receiver, int priority) {
+        throw new UnsupportedOperationException("call messenger instead");
+    }
+
+    @Override
+    public ReliableMessage sendInstantMessage(InstantMessage iMsg, int priority) {
+        throw new UnsupportedOperationException("call messenger instead");
+    }
+
+    @Override
+    public boolean sendReliableMessage(ReliableMessage rMsg, int priority) {
+        throw new UnsupportedOperationException("call messenger instead");
+    }
+}
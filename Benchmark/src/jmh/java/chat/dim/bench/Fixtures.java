@@ -0,0 +1,208 @@
+/* license: https://mit-license.org
+ *
+ *  DIM-SDK : Decentralized Instant Messaging Software Development Kit
+ *
+ *                                Written in 2026 by Moky <albert.moky@gmail.com>
+ *
+ * ==============================================================================
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2026 Albert Moky
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * ==============================================================================
+ */
+package chat.dim.bench;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import chat.dim.ClientChecker;
+import chat.dim.ClientFacebook;
+import chat.dim.CommonArchivist;
+import chat.dim.CommonFacebook;
+import chat.dim.CommonMessagePacker;
+import chat.dim.CommonMessenger;
+import chat.dim.Register;
+import chat.dim.compat.LibraryLoader;
+import chat.dim.dbi.AccountDBI;
+import chat.dim.group.GroupDelegate;
+import chat.dim.group.GroupPacker;
+import chat.dim.mkm.User;
+import chat.dim.msg.MessageUtils;
+import chat.dim.protocol.Content;
+import chat.dim.protocol.Envelope;
+import chat.dim.protocol.ID;
+import chat.dim.protocol.InstantMessage;
+import chat.dim.protocol.ReliableMessage;
+import chat.dim.protocol.SecureMessage;
+import chat.dim.protocol.TextContent;
+
+/**
+ *  Message Pipeline Fixtures
+ *  ~~~~~~~~~~~~~~~~~~~~~~~~~
+ *
+ *  Wires the real facebook, messenger & packers with memory databases,
+ *  and creates two local users: 'sender' and 'receiver'.
+ */
+public class Fixtures {
+
+    private static boolean loaded = false;
+
+    public static synchronized void loadLibraries() {
+        if (!loaded) {
+            new LibraryLoader(null, null).run();
+            loaded = true;
+        }
+    }
+
+    public final MemoryAccountDB database = new MemoryAccountDB();
+    public final MemoryCipherKeyDB keyDatabase = new MemoryCipherKeyDB();
+    public final BenchSession session = new BenchSession();
+
+    public final CommonFacebook facebook;
+    public final CommonMessenger messenger;
+    public final CommonMessagePacker packer;
+    public final GroupPacker groupPacker;
+
+    public final ID sender;
+    public final ID receiver;
+    public final ID group;
+
+    public Fixtures() {
+        super();
+        loadLibraries();
+        // barrack
+        facebook = new BenchFacebook(database);
+        facebook.setBarrack(new CommonArchivist(facebook, database));
+        ClientChecker checker = new ClientChecker(facebook, database);
+        facebook.setEntityChecker(checker);
+        // transceiver
+        messenger = new CommonMessenger(session, facebook, keyDatabase);
+        checker.setMessenger(messenger);
+        packer = new BenchPacker(facebook, messenger);
+        messenger.setPacker(packer);
+        groupPacker = new GroupPacker(new GroupDelegate(facebook, messenger));
+        // accounts
+        Register register = new Register(database, facebook.getArchivist());
+        sender = register.createUser("Alice", null);
+        receiver = register.createUser("Bob", null);
+        List<ID> users = new ArrayList<>();
+        users.add(sender);
+        users.add(receiver);
+        database.saveLocalUsers(users);
+        group = register.createGroup(sender, "Benchmark");
+        User current = facebook.getUser(sender);
+        assert current != null : "failed to create user: " + sender;
+        facebook.setCurrentUser(current);
+    }
+
+    /**
+     *  Create a text message from 'sender'
+     *
+     * @param to          - receiver or group
+     * @param text        - message text
+     * @param attachments - whether attach sender's meta & visa
+     * @return plain message
+     */
+    public InstantMessage createMessage(ID to, String text, boolean attachments) {
+        Envelope env = Envelope.create(sender, to, null);
+        Content content = TextContent.create(text);
+        if (to.isGroup()) {
+            content.setGroup(to);
+        }
+        InstantMessage iMsg = InstantMessage.create(env, content);
+        if (attachments) {
+            User user = facebook.getUser(sender);
+            MessageUtils.setMeta(user.getMeta(), iMsg);
+            MessageUtils.setVisa(user.getVisa(), iMsg);
+        }
+        return iMsg;
+    }
+
+    public ReliableMessage packMessage(InstantMessage iMsg) {
+        SecureMessage sMsg = messenger.encryptMessage(iMsg);
+        assert sMsg != null : "failed to encrypt message: " + iMsg;
+        ReliableMessage rMsg = messenger.signMessage(sMsg);
+        assert rMsg != null : "failed to sign message: " + sMsg;
+        return rMsg;
+    }
+
+    /**
+     *  Create member IDs for splitting
+     *  (they share sender's address, no keys needed for splitting)
+     */
+    public List<ID> createMembers(int count) {
+        List<ID> members = new ArrayList<>(count + 1);
+        members.add(sender);
+        for (int index = 1; index < count; ++index) {
+            members.add(ID.create("member" + index, sender.getAddress(), null));
+        }
+        return members;
+    }
+
+    /**
+     *  Create a group message encrypted with one message key,
+     *  the key is "encrypted" for each member (random data here).
+     */
+    public ReliableMessage createGroupMessage(List<ID> members, String text) {
+        InstantMessage iMsg = createMessage(receiver, text, false);
+        ReliableMessage rMsg = packMessage(iMsg);
+        Map<String, Object> info = rMsg.copyMap(false);
+        info.put("receiver", group.toString());
+        info.put("group", group.toString());
+        Object keyData = info.remove("key");
+        Map<String, Object> keys = new HashMap<>();
+        for (ID member : members) {
+            keys.put(member.toString(), keyData);
+        }
+        info.put("keys", keys);
+        return ReliableMessage.parse(info);
+    }
+
+    //
+    //  Pipeline Roles
+    //
+
+    static class BenchFacebook extends ClientFacebook {
+
+        BenchFacebook(AccountDBI database) {
+            super(database);
+        }
+    }
+
+    static class BenchPacker extends CommonMessagePacker {
+
+        BenchPacker(CommonFacebook facebook, CommonMessenger messenger) {
+            super(facebook, messenger);
+        }
+
+        @Override
+        protected void suspendMessage(ReliableMessage rMsg, Map<String, ?> info) {
+            throw new IllegalStateException("sender not ready: " + info);
+        }
+
+        @Override
+        protected void suspendMessage(InstantMessage iMsg, Map<String, ?> info) {
+            throw new IllegalStateException("receiver not ready: " + info);
+        }
+    }
+}
@@ -0,0 +1,97 @@
+/* license: https://mit-license.org
+ *
+ *  DIM-SDK : Decentralized Instant Messaging Software Development Kit
+ *
+ *                                Written in 2026 by Moky <albert.moky@gmail.com>
+ *
+ * ==============================================================================
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2026 Albert Moky
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * ==============================================================================
+ */
+package chat.dim.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+
+import chat.dim.CommonMessenger;
+import chat.dim.protocol.InstantMessage;
+import chat.dim.protocol.SecureMessage;
+
+/**
+ *  Per-message cost with/without reusing message key
+ *
+ *      reuse=false: every message carries the key encrypted by receiver's visa key
+ *      reuse=true:  only the first message carries the key, the following ones
+ *                   carry the key digest, so no RSA encrypt/decrypt for them.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class KeyReuseBenchmark {
+
+    @Param({"false", "true"})
+    public boolean reuse;
+
+    private Fixtures fixtures;
+    private SecureMessage secureMessage;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        CommonMessenger.REUSE_KEY = reuse;
+        fixtures = new Fixtures();
+        // the first message carries the whole key
+        InstantMessage iMsg = fixtures.createMessage(fixtures.receiver, "Hello world!", false);
+        fixtures.packer.encryptMessage(iMsg);
+        // the following messages carry key digest only (if reused)
+        iMsg = fixtures.createMessage(fixtures.receiver, "Hello world!", false);
+        secureMessage = fixtures.packer.encryptMessage(iMsg);
+        assert reuse == (secureMessage.get("key") == null) : "key reuse error: " + secureMessage;
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        CommonMessenger.REUSE_KEY = false;
+    }
+
+    @Benchmark
+    public SecureMessage encryptMessage() {
+        InstantMessage iMsg = fixtures.createMessage(fixtures.receiver, "Hello world!", false);
+        return fixtures.packer.encryptMessage(iMsg);
+    }
+
+    @Benchmark
+    public InstantMessage decryptMessage() {
+        SecureMessage sMsg = SecureMessage.parse(secureMessage.copyMap(false));
+        return fixtures.packer.decryptMessage(sMsg);
+    }
+}
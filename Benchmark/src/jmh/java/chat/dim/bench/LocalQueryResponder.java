@@ -0,0 +1,153 @@
+/* license: https://mit-license.org
+ *
+ *  DIM-SDK : Decentralized Instant Messaging Software Development Kit
+ *
+ *                                Written in 2026 by Moky <albert.moky@gmail.com>
+ *
+ * ==============================================================================
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2026 Albert Moky
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * ==============================================================================
+ */
+package chat.dim.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+
+import chat.dim.CommonFacebook;
+import chat.dim.Transmitter;
+import chat.dim.core.Archivist;
+import chat.dim.dbi.AccountDBI;
+import chat.dim.mkm.User;
+import chat.dim.protocol.ArrayContent;
+import chat.dim.protocol.Content;
+import chat.dim.protocol.Document;
+import chat.dim.protocol.DocumentCommand;
+import chat.dim.protocol.Envelope;
+import chat.dim.protocol.ID;
+import chat.dim.protocol.InstantMessage;
+import chat.dim.protocol.Meta;
+import chat.dim.protocol.MetaCommand;
+import chat.dim.protocol.ReliableMessage;
+import chat.dim.type.Pair;
+
+/**
+ *  Station stand-in for meta/document queries
+ *  ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ *
+ *  Answers the query commands (batched or not) from its own database,
+ *  and saves the responded meta & documents into the facebook directly,
+ *  so the query scheduler can be checked without network.
+ *
+ *  Usage:
+ *      checker.getQueryScheduler().setTransmitter(new LocalQueryResponder(facebook, remoteDB));
+ */
+public class LocalQueryResponder implements Transmitter {
+
+    private final CommonFacebook facebook;
+    private final AccountDBI database;  // station's database
+
+    private int messageCount = 0;
+    private int queryCount = 0;
+    private int respondCount = 0;
+
+    public LocalQueryResponder(CommonFacebook facebook, AccountDBI remote) {
+        super();
+        this.facebook = facebook;
+        this.database = remote;
+    }
+
+    public synchronized int getMessageCount() {
+        return messageCount;
+    }
+
+    public synchronized int getQueryCount() {
+        return queryCount;
+    }
+
+    public synchronized int getRespondCount() {
+        return respondCount;
+    }
+
+    @Override
+    public synchronized Pair<InstantMessage, ReliableMessage> sendContent(Content content, ID sender, ID receiver, int priority) {
+        ++messageCount;
+        List<Content> contents;
+        if (content instanceof ArrayContent) {
+            contents = ((ArrayContent) content).getContents();
+        } else {
+            contents = new ArrayList<>();
+            contents.add(content);
+        }
+        for (Content item : contents) {
+            if (item instanceof MetaCommand) {
+                ++queryCount;
+                if (respond((MetaCommand) item)) {
+                    ++respondCount;
+                }
+            }
+        }
+        if (sender == null) {
+            User current = facebook.getCurrentUser();
+            assert current != null : "current user not set";
+            sender = current.getIdentifier();
+        }
+        InstantMessage iMsg = InstantMessage.create(Envelope.create(sender, receiver, null), content);
+        // pretend it was packed
+        Map<String, Object> info = iMsg.copyMap(false);
+        info.remove("content");
+        info.put("data", "");
+        info.put("signature", "");
+        return new Pair<>(iMsg, ReliableMessage.parse(info));
+    }
+
+    private boolean respond(MetaCommand command) {
+        ID identifier = command.getIdentifier();
+        Meta meta = database.getMeta(identifier);
+        if (meta == null) {
+            return false;
+        }
+        Archivist archivist = facebook.getArchivist();
+        archivist.saveMeta(meta, identifier);
+        if (command instanceof DocumentCommand) {
+            List<Document> documents = database.getDocuments(identifier);
+            if (documents != null) {
+                for (Document doc : documents) {
+                    archivist.saveDocument(doc);
+                }
+            }
+        }
+        return true;
+    }
+
+    @Override
+    public ReliableMessage sendInstantMessage(InstantMessage iMsg, int priority) {
+        Pair<InstantMessage, ReliableMessage> pair = sendContent(iMsg.getContent(), iMsg.getSender(), iMsg.getReceiver(), priority);
+        return pair.second;
+    }
+
+    @Override
+    public boolean sendReliableMessage(ReliableMessage rMsg, int priority) {
+        throw new UnsupportedOperationException("cannot read reliable message");
+    }
+}
@@ -0,0 +1,258 @@
+/* license: https://mit-license.org
+ *
+ *  DIM-SDK : Decentralized Instant Messaging Software Development Kit
+ *
+ *                                Written in 2026 by Moky <albert.moky@gmail.com>
+ *
+ * ==============================================================================
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2026 Albert Moky
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * ==============================================================================
+ */
+package chat.dim.bench;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import chat.dim.crypto.DecryptKey;
+import chat.dim.crypto.PrivateKey;
+import chat.dim.dbi.AccountDBI;
+import chat.dim.dbi.PrivateKeyDBI;
+import chat.dim.protocol.Document;
+import chat.dim.protocol.GroupCommand;
+import chat.dim.protocol.ID;
+import chat.dim.protocol.Meta;
+import chat.dim.protocol.ReliableMessage;
+import chat.dim.protocol.group.ResetCommand;
+import chat.dim.type.Pair;
+
+/**
+ *  Account database in memory
+ *  ~~~~~~~~~~~~~~~~~~~~~~~~~~
+ *
+ *  Keeps the benchmarks away from disk I/O
+ */
+public class MemoryAccountDB implements AccountDBI {
+
+    private final Map<ID, PrivateKey> signKeys = new HashMap<>();
+    private final Map<ID, List<PrivateKey>> visaKeys = new HashMap<>();
+
+    private final Map<ID, Meta> metas = new HashMap<>();
+    private final Map<ID, List<Document>> documents = new HashMap<>();
+
+    private List<ID> localUsers = new ArrayList<>();
+    private final Map<ID, List<ID>> contacts = new HashMap<>();
+
+    private final Map<ID, List<ID>> members = new HashMap<>();
+    private final Map<ID, List<ID>> assistants = new HashMap<>();
+    private final Map<ID, List<ID>> administrators = new HashMap<>();
+
+    private final Map<ID, List<Pair<GroupCommand, ReliableMessage>>> histories = new HashMap<>();
+
+    //
+    //  PrivateKey DBI
+    //
+
+    @Override
+    public boolean savePrivateKey(PrivateKey key, String type, ID user) {
+        if (META.equals(type)) {
+            signKeys.put(user, key);
+            return true;
+        }
+        List<PrivateKey> array = visaKeys.get(user);
+        if (array == null) {
+            array = new ArrayList<>();
+            visaKeys.put(user, array);
+        }
+        return PrivateKeyDBI.insertKey(key, array) != null;
+    }
+
+    @Override
+    public List<DecryptKey> getPrivateKeysForDecryption(ID user) {
+        List<PrivateKey> array = visaKeys.get(user);
+        if (array == null) {
+            array = new ArrayList<>();
+            PrivateKey key = signKeys.get(user);
+            if (key != null) {
+                array.add(key);
+            }
+        }
+        return PrivateKeyDBI.convertDecryptKeys(array);
+    }
+
+    @Override
+    public PrivateKey getPrivateKeyForSignature(ID user) {
+        return signKeys.get(user);
+    }
+
+    @Override
+    public PrivateKey getPrivateKeyForVisaSignature(ID user) {
+        return signKeys.get(user);
+    }
+
+    //
+    //  Meta DBI
+    //
+
+    @Override
+    public boolean saveMeta(Meta meta, ID entity) {
+        metas.put(entity, meta);
+        return true;
+    }
+
+    @Override
+    public Meta getMeta(ID entity) {
+        return metas.get(entity);
+    }
+
+    //
+    //  Document DBI
+    //
+
+    @Override
+    public boolean saveDocument(Document doc) {
+        List<Document> array = new ArrayList<>();
+        array.add(doc);
+        documents.put(doc.getIdentifier(), array);
+        return true;
+    }
+
+    @Override
+    public List<Document> getDocuments(ID entity) {
+        return documents.get(entity);
+    }
+
+    //
+    //  User DBI
+    //
+
+    @Override
+    public List<ID> getLocalUsers() {
+        return localUsers;
+    }
+
+    @Override
+    public boolean saveLocalUsers(List<ID> users) {
+        localUsers = users;
+        return true;
+    }
+
+    //
+    //  Contact DBI
+    //
+
+    @Override
+    public List<ID> getContacts(ID user) {
+        return contacts.get(user);
+    }
+
+    @Override
+    public boolean saveContacts(List<ID> array, ID user) {
+        contacts.put(user, array);
+        return true;
+    }
+
+    //
+    //  Group DBI
+    //
+
+    @Override
+    public ID getFounder(ID group) {
+        return null;
+    }
+
+    @Override
+    public ID getOwner(ID group) {
+        return null;
+    }
+
+    @Override
+    public List<ID> getMembers(ID group) {
+        return members.get(group);
+    }
+
+    @Override
+    public boolean saveMembers(List<ID> array, ID group) {
+        members.put(group, array);
+        return true;
+    }
+
+    @Override
+    public List<ID> getAssistants(ID group) {
+        return assistants.get(group);
+    }
+
+    @Override
+    public boolean saveAssistants(List<ID> bots, ID group) {
+        assistants.put(group, bots);
+        return true;
+    }
+
+    @Override
+    public List<ID> getAdministrators(ID group) {
+        return administrators.get(group);
+    }
+
+    @Override
+    public boolean saveAdministrators(List<ID> array, ID group) {
+        administrators.put(group, array);
+        return true;
+    }
+
+    //
+    //  Group History DBI
+    //
+
+    @Override
+    public boolean saveGroupHistory(GroupCommand content, ReliableMessage rMsg, ID group) {
+        List<Pair<GroupCommand, ReliableMessage>> array = histories.get(group);
+        if (array == null) {
+            array = new ArrayList<>();
+            histories.put(group, array);
+        }
+        array.add(new Pair<>(content, rMsg));
+        return true;
+    }
+
+    @Override
+    public List<Pair<GroupCommand, ReliableMessage>> getGroupHistories(ID group) {
+        return histories.get(group);
+    }
+
+    @Override
+    public Pair<ResetCommand, ReliableMessage> getResetCommandMessage(ID group) {
+        return null;
+    }
+
+    @Override
+    public boolean clearGroupMemberHistories(ID group) {
+        histories.remove(group);
+        return true;
+    }
+
+    @Override
+    public boolean clearGroupAdminHistories(ID group) {
+        return true;
+    }
+}
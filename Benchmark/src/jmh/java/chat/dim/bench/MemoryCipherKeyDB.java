@@ -0,0 +1,67 @@
+/* license: https://mit-license.org
+ *
+ *  DIM-SDK : Decentralized Instant Messaging Software Development Kit
+ *
+ *                                Written in 2026 by Moky <albert.moky@gmail.com>
+ *
+ * ==============================================================================
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2026 Albert Moky
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * ==============================================================================
+ */
+package chat.dim.bench;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import chat.dim.crypto.PlainKey;
+import chat.dim.crypto.SymmetricAlgorithms;
+import chat.dim.crypto.SymmetricKey;
+import chat.dim.dbi.CipherKeyDBI;
+import chat.dim.protocol.ID;
+
+/**
+ *  Message keys in memory
+ */
+public class MemoryCipherKeyDB implements CipherKeyDBI {
+
+    private final Map<String, SymmetricKey> keys = new HashMap<>();
+
+    @Override
+    public SymmetricKey getCipherKey(ID sender, ID receiver, boolean generate) {
+        if (receiver.isBroadcast()) {
+            return PlainKey.getInstance();
+        }
+        String direction = sender + "->" + receiver;
+        SymmetricKey key = keys.get(direction);
+        if (key == null && generate) {
+            key = SymmetricKey.generate(SymmetricAlgorithms.AES);
+            keys.put(direction, key);
+        }
+        return key;
+    }
+
+    @Override
+    public void cacheCipherKey(ID sender, ID receiver, SymmetricKey key) {
+        keys.put(sender + "->" + receiver, key);
+    }
+}
@@ -0,0 +1,93 @@
+/* license: https://mit-license.org
+ *
+ *  DIM-SDK : Decentralized Instant Messaging Software Development Kit
+ *
+ *                                Written in 2026 by Moky <albert.moky@gmail.com>
+ *
+ * ==============================================================================
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2026 Albert Moky
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * ==============================================================================
+ */
+package chat.dim.bench;
+
+import java.util.Date;
+import java.util.List;
+
+import chat.dim.port.Arrival;
+import chat.dim.port.Departure;
+
+/**
+ *  Departure ship without docker
+ *  ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ *
+ *  Only carries the package data for queueing, never sent out.
+ */
+public class PackageShip implements Departure {
+
+    private final Object sn;
+    private final int priority;
+    private final List<byte[]> fragments;
+
+    public PackageShip(Object sn, int priority, List<byte[]> fragments) {
+        super();
+        this.sn = sn;
+        this.priority = priority;
+        this.fragments = fragments;
+    }
+
+    @Override
+    public Object getSN() {
+        return sn;
+    }
+
+    @Override
+    public int getPriority() {
+        return priority;
+    }
+
+    @Override
+    public List<byte[]> getFragments() {
+        return fragments;
+    }
+
+    @Override
+    public boolean checkResponse(Arrival response) {
+        return false;
+    }
+
+    @Override
+    public boolean isImportant() {
+        return false;
+    }
+
+    @Override
+    public void touch(Date now) {
+        // not sending
+    }
+
+    @Override
+    public Status getStatus(Date now) {
+        // not sending
+        return null;
+    }
+}
@@ -0,0 +1,111 @@
+/* license: https://mit-license.org
+ *
+ *  DIM-SDK : Decentralized Instant Messaging Software Development Kit
+ *
+ *                                Written in 2026 by Moky <albert.moky@gmail.com>
+ *
+ * ==============================================================================
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2026 Albert Moky
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * ==============================================================================
+ */
+package chat.dim.bench;
+
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import chat.dim.protocol.InstantMessage;
+import chat.dim.protocol.ReliableMessage;
+import chat.dim.protocol.SecureMessage;
+
+/**
+ *  CommonMessagePacker.encryptMessage/signMessage/verifyMessage
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class PackerBenchmark {
+
+    private Fixtures fixtures;
+    private SecureMessage secureMessage;
+    private ReliableMessage reliableMessage;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        fixtures = new Fixtures();
+        InstantMessage iMsg = fixtures.createMessage(fixtures.receiver, "Hello world!", false);
+        secureMessage = fixtures.packer.encryptMessage(iMsg);
+        reliableMessage = fixtures.packer.signMessage(secureMessage);
+    }
+
+    @Benchmark
+    public SecureMessage encryptMessage() {
+        // the packer changes the plain message, so create a new one each time
+        InstantMessage iMsg = fixtures.createMessage(fixtures.receiver, "Hello world!", false);
+        return fixtures.packer.encryptMessage(iMsg);
+    }
+
+    @Benchmark
+    public ReliableMessage signMessage() {
+        SecureMessage sMsg = SecureMessage.parse(secureMessage.copyMap(false));
+        return fixtures.packer.signMessage(sMsg);
+    }
+
+    /**
+     *  A new signed message for each invocation,
+     *  so the verifying will not hit the signature cache
+     */
+    @State(Scope.Thread)
+    public static class SignedMessage {
+
+        private int counter = 0;
+        ReliableMessage reliableMessage;
+
+        @Setup(Level.Invocation)
+        public void setup(PackerBenchmark bench) {
+            Fixtures fixtures = bench.fixtures;
+            String text = "Hello world! " + (++counter);
+            InstantMessage iMsg = fixtures.createMessage(fixtures.receiver, text, false);
+            SecureMessage sMsg = fixtures.packer.encryptMessage(iMsg);
+            reliableMessage = fixtures.packer.signMessage(sMsg);
+        }
+    }
+
+    @Benchmark
+    public SecureMessage verifyMessage(SignedMessage signed) {
+        return fixtures.packer.verifyMessage(signed.reliableMessage);
+    }
+
+    @Benchmark
+    public SecureMessage verifyMessageCached() {
+        // same message each time, hits the signature cache after the first call
+        return fixtures.packer.verifyMessage(reliableMessage);
+    }
+}
@@ -0,0 +1,98 @@
+/* license: https://mit-license.org
+ *
+ *  DIM-SDK : Decentralized Instant Messaging Software Development Kit
+ *
+ *                                Written in 2026 by Moky <albert.moky@gmail.com>
+ *
+ * ==============================================================================
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2026 Albert Moky
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * ==============================================================================
+ */
+package chat.dim.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import chat.dim.QueryScheduler;
+import chat.dim.mkm.Station;
+import chat.dim.protocol.DocumentCommand;
+import chat.dim.protocol.ID;
+
+/**
+ *  Querying documents for unknown group members:
+ *
+ *      batch=false: one query message for each member
+ *      batch=true:  queries collected by QueryScheduler and sent in batches
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class QueryBenchmark {
+
+    @Param({"false", "true"})
+    public boolean batch;
+
+    @Param({"15", "500"})
+    public int members;
+
+    private Fixtures fixtures;
+    private List<ID> allMembers;
+    private QueryScheduler scheduler;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        fixtures = new Fixtures();
+        allMembers = fixtures.createMembers(members);
+        scheduler = new QueryScheduler();
+        scheduler.setTransmitter(fixtures.messenger);
+    }
+
+    @Benchmark
+    public int queryDocuments() {
+        int count = 0;
+        for (ID item : allMembers) {
+            DocumentCommand command = DocumentCommand.query(item, null);
+            if (batch) {
+                scheduler.queryDocuments(item, command);
+            } else if (fixtures.messenger.sendContent(command, null, Station.ANY, 1).second != null) {
+                ++count;
+            }
+        }
+        if (batch) {
+            count = scheduler.flush();
+        }
+        // drop the packages
+        fixtures.session.drain();
+        return count;
+    }
+}
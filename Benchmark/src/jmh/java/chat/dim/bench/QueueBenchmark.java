@@ -0,0 +1,108 @@
+/* license: https://mit-license.org
+ *
+ *  DIM-SDK : Decentralized Instant Messaging Software Development Kit
+ *
+ *                                Written in 2026 by Moky <albert.moky@gmail.com>
+ *
+ * ==============================================================================
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2026 Albert Moky
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * ==============================================================================
+ */
+package chat.dim.bench;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OperationsPerInvocation;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import chat.dim.port.Departure;
+import chat.dim.protocol.ID;
+import chat.dim.protocol.ReliableMessage;
+import chat.dim.queue.MessageQueue;
+
+/**
+ *  MessageQueue.append/next
+ *
+ *  Fills the queue with a burst of group-split messages (same signature,
+ *  different receivers) and drains it again.
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+public class QueueBenchmark {
+
+    public static final int BURST = 1000;
+
+    // messages waiting in the queue before the burst
+    @Param({"0", "5000"})
+    public int backlog;
+
+    private MessageQueue queue;
+    private final List<ReliableMessage> messages = new ArrayList<>();
+    private final List<Departure> ships = new ArrayList<>();
+
+    @Setup(Level.Trial)
+    public void setup() {
+        Fixtures fixtures = new Fixtures();
+        List<ID> members = fixtures.createMembers(backlog + BURST + 1);  // sender will be skipped
+        ReliableMessage rMsg = fixtures.createGroupMessage(members, "Hello everyone!");
+        List<ReliableMessage> array = fixtures.groupPacker.splitMessage(rMsg, members);
+        List<byte[]> fragments = new ArrayList<>();
+        fragments.add(fixtures.messenger.serializeMessage(rMsg));
+        for (ReliableMessage item : array) {
+            messages.add(item);
+            ships.add(new PackageShip(item.get("sn"), 1, fragments));
+        }
+    }
+
+    @Setup(Level.Invocation)
+    public void fill() {
+        queue = new MessageQueue();
+        for (int index = 0; index < backlog; ++index) {
+            queue.append(messages.get(index), ships.get(index));
+        }
+    }
+
+    @Benchmark
+    @OperationsPerInvocation(BURST)
+    public void appendAndNext(Blackhole bh) {
+        int total = messages.size();
+        for (int index = backlog; index < total; ++index) {
+            bh.consume(queue.append(messages.get(index), ships.get(index)));
+        }
+        for (int index = 0; index < BURST; ++index) {
+            bh.consume(queue.next());
+        }
+    }
+}
@@ -0,0 +1,89 @@
+/* license: https://mit-license.org
+ *
+ *  DIM-SDK : Decentralized Instant Messaging Software Development Kit
+ *
+ *                                Written in 2026 by Moky <albert.moky@gmail.com>
+ *
+ * ==============================================================================
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2026 Albert Moky
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * ==============================================================================
+ */
+package chat.dim.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+
+import chat.dim.group.GroupPacker;
+import chat.dim.protocol.ID;
+import chat.dim.protocol.InstantMessage;
+import chat.dim.protocol.ReliableMessage;
+
+/**
+ *  GroupPacker.splitMessage for instant & reliable messages,
+ *  copying the whole message for each member vs. sharing one body
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class SplitBenchmark {
+
+    @Param({"15", "500", "2000"})
+    public int members;
+
+    @Param({"true", "false"})
+    public boolean lightweight;
+
+    private Fixtures fixtures;
+    private List<ID> allMembers;
+    private InstantMessage instantMessage;
+    private ReliableMessage reliableMessage;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        GroupPacker.LIGHTWEIGHT_SPLIT = lightweight;
+        fixtures = new Fixtures();
+        allMembers = fixtures.createMembers(members);
+        instantMessage = fixtures.createMessage(fixtures.group, "Hello everyone!", false);
+        reliableMessage = fixtures.createGroupMessage(allMembers, "Hello everyone!");
+    }
+
+    @Benchmark
+    public List<InstantMessage> splitInstantMessage() {
+        return fixtures.groupPacker.splitMessage(instantMessage, allMembers);
+    }
+
+    @Benchmark
+    public List<ReliableMessage> splitReliableMessage() {
+        return fixtures.groupPacker.splitMessage(reliableMessage, allMembers);
+    }
+}
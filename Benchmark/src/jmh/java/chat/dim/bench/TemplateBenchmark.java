@@ -0,0 +1,93 @@
+/* license: https://mit-license.org
+ *
+ *  DIM-SDK : Decentralized Instant Messaging Software Development Kit
+ *
+ *                                Written in 2026 by Moky <albert.moky@gmail.com>
+ *
+ * ==============================================================================
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2026 Albert Moky
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * ==============================================================================
+package chat.dim.bench;
+
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.infra.Blackhole;
+
+import chat.dim.MessageTemplate;
+import chat.dim.protocol.ID;
+import chat.dim.protocol.ReliableMessage;
+
+/**
+ *  Serializing the messages split from one group message:
+ *  full serialization for each member vs. splicing into a pre-encoded template
+ */
+@State(Scope.Benchmark)
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+public class TemplateBenchmark {
+
+    @Param({"15", "500", "2000"})
+    public int members;
+
+    private Fixtures fixtures;
+    private ReliableMessage groupMessage;
+    private List<ReliableMessage> messages;
+
+    @Setup(Level.Trial)
+    public void setup() {
+        fixtures = new Fixtures();
+        List<ID> allMembers = fixtures.createMembers(members);
+        groupMessage = fixtures.createGroupMessage(allMembers, "Hello everyone!");
+        messages = fixtures.groupPacker.splitMessage(groupMessage, allMembers);
+    }
+
+    @Benchmark
+    public void serializeEach(Blackhole bh) {
+        for (ReliableMessage item : messages) {
+            bh.consume(fixtures.messenger.serializeMessage(item));
+        }
+    }
+
+    @Benchmark
+    public void serializeOnce(Blackhole bh) {
+        MessageTemplate template = fixtures.messenger.createMessageTemplate(groupMessage);
+        fixtures.messenger.setMessageTemplate(template);
+        try {
+            for (ReliableMessage item : messages) {
+                bh.consume(fixtures.messenger.serializeMessage(item));
+            }
+        } finally {
+            fixtures.messenger.setMessageTemplate(null);
+        }
+    }
+}
@@ -31,12 +31,14 @@
 package chat.dim;
 
 import java.util.Date;
-import java.util.HashMap;
-import java.util.Iterator;
 import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
 
 import chat.dim.protocol.ReliableMessage;
-import chat.dim.type.Duration;
 
 public enum Checkpoint {
 
@@ -52,12 +54,9 @@ public enum Checkpoint {
     private final SigPool pool = new SigPool();
 
     public boolean checkDuplicatedMessage(ReliableMessage msg) {
-        boolean repeated = pool.checkDuplicated(msg);
-        Date now = msg.getTime();
-        if (now != null) {
-            pool.purge(now);
-        }
-        return repeated;
+        // turn the wheel before checking
+        pool.purge(System.currentTimeMillis());
+        return pool.checkDuplicated(msg);
     }
 
     public String getSig(ReliableMessage msg) {
@@ -69,46 +68,109 @@ public enum Checkpoint {
 
 /**
  *  Signature pool for messages
+ *  ~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ *
+ *  Traces are indexed by "signature:receiver" for O(1) checking,
+ *  and grouped into time buckets (timer wheel) by message time,
+ *  so expired traces are purged bucket by bucket, not by a full sweep.
+ *
+ *  When the pool is full, the oldest buckets are evicted early,
+ *  and their traces go into a Bloom filter until they expire.
  */
 class SigPool {
 
-    static Duration EXPIRES = Duration.ofMinutes(60);
+    static long EXPIRES = 60 * 60 * 1000;  // milliseconds
+    static long BUCKET_SIZE = 60 * 1000;   // milliseconds
+
+    static int MAX_TRACES = 256 * 1024;
+
+    // NOTICE: a false positive of the Bloom filter will drop a new message,
+    //         the rate is kept under 0.5% by stopping adding when it's full.
+    static boolean BLOOM_FILTER = false;
+
+    // "signature:receiver" => bucket
+    private final Map<String, Bucket> index = new ConcurrentHashMap<>();
+    private final AtomicInteger count = new AtomicInteger(0);
+
+    private final Bucket[] wheel;
+    private final ReentrantLock lock = new ReentrantLock();
 
-    // "signature:receiver" => Date Time
-    private final Map<String, Date> caches = new HashMap<>();
+    // traces evicted before expired
+    private final BloomFilter bloom;
+    private volatile long bloomExpired = 0;  // epoch for clearing the Bloom filter
 
-    private Date nextTime;
+    SigPool() {
+        super();
+        int buckets = (int) (EXPIRES / BUCKET_SIZE) + 1;
+        wheel = new Bucket[buckets];
+        long epoch = System.currentTimeMillis() / BUCKET_SIZE;
+        for (int i = 0; i < buckets; ++i) {
+            // bucket for epoch 'e' is at 'e % buckets'
+            long e = epoch - buckets + 1 + i;
+            wheel[(int) (e % buckets)] = new Bucket(e);
+        }
+        bloom = BLOOM_FILTER ? new BloomFilter(MAX_TRACES) : null;
+    }
 
     /**
-     *  Remove expired traces
+     *  Remove expired traces (incrementally)
+     *
+     * @return false on nothing changed
      */
-    boolean purge(Date now) {
-        Date next = nextTime;
-        if (next != null) {
-            if (now == null || now.before(next)) {
-                return false;
-            }
-        }
-        now = new Date();
-        if (next != null && now.before(next)) {
+    boolean purge(long now) {
+        long epoch = now / BUCKET_SIZE;
+        Bucket current = wheel[(int) (epoch % wheel.length)];
+        if (current.epoch == epoch && count.get() <= MAX_TRACES) {
+            // wheel not moved, and not full
+            return false;
+        } else if (!lock.tryLock()) {
+            // another thread is purging
             return false;
-        } else {
-            // purge it next 5 minutes
-            nextTime = Duration.ofMinutes(5).addTo(now);
         }
-        Date expired = EXPIRES.subtractFrom(now);
-        Iterator<Map.Entry<String, Date>> it = caches.entrySet().iterator();
-        Map.Entry<String, Date> entry;
-        Date when;
-        while (it.hasNext()) {
-            when = it.next().getValue();
-            if (when == null || when.before(expired)) {
-                it.remove();
+        try {
+            // 1. turn the wheel, drop buckets expired
+            Bucket bucket;
+            for (long e = epoch - wheel.length + 1; e <= epoch; ++e) {
+                int pos = (int) (e % wheel.length);
+                bucket = wheel[pos];
+                if (bucket.epoch < e) {
+                    expire(bucket, false);
+                    wheel[pos] = new Bucket(e);
+                }
             }
+            // 2. evict the oldest buckets when full
+            for (long e = epoch - wheel.length + 1; e < epoch && count.get() > MAX_TRACES; ++e) {
+                expire(wheel[(int) (e % wheel.length)], true);
+            }
+            if (bloom != null && bloomExpired > 0 && bloomExpired <= epoch) {
+                bloom.clear();
+                bloomExpired = 0;
+            }
+        } finally {
+            lock.unlock();
         }
         return true;
     }
 
+    // lock needed
+    private void expire(Bucket bucket, boolean early) {
+        bucket.expired = true;
+        boolean keep = early && bloom != null;
+        for (String tag : bucket.traces) {
+            if (index.remove(tag, bucket)) {
+                count.decrementAndGet();
+            }
+            if (keep && !bloom.add(tag)) {
+                // Bloom filter full, forget the rest
+                keep = false;
+            }
+        }
+        bucket.traces.clear();
+        if (early && bloom != null) {
+            bloomExpired = Math.max(bloomExpired, bucket.epoch + wheel.length);
+        }
+    }
+
     boolean checkDuplicated(ReliableMessage msg) {
         String sig = msg.getString("signature", null);
         if (sig == null) {
@@ -119,15 +181,29 @@ class SigPool {
         }
         String address = msg.getReceiver().getAddress().toString();
         String tag = sig + ":" + address;
-        if (caches.containsKey(tag)) {
+        // find the bucket by message time
+        long now = System.currentTimeMillis();
+        Date when = msg.getTime();
+        long time = when == null ? now : Math.min(when.getTime(), now);
+        long epoch = Math.max(time, now - EXPIRES) / BUCKET_SIZE;
+        Bucket bucket = wheel[(int) (epoch % wheel.length)];
+        if (bucket.epoch != epoch) {
+            // wheel not turned yet, put it into a newer one
+            bucket = wheel[(int) ((now / BUCKET_SIZE) % wheel.length)];
+        }
+        if (index.putIfAbsent(tag, bucket) != null) {
+            return true;
+        } else if (bloom != null && bloomExpired > 0 && bloom.contains(tag)) {
+            // evicted, but not expired yet
+            index.remove(tag, bucket);
             return true;
         }
-        // cache not found, create a new one with message time
-        Date when = msg.getTime();
-        if (when == null) {
-            when = new Date();
+        count.incrementAndGet();
+        bucket.traces.add(tag);
+        if (bucket.expired && index.remove(tag, bucket)) {
+            // expired by another thread just now
+            count.decrementAndGet();
         }
-        caches.put(tag, when);
         return false;
     }
 
@@ -137,4 +213,81 @@ class SigPool {
         return len <= maxLen ? signature : signature.substring(len - maxLen);
     }
 
+    private static final class Bucket {
+
+        final long epoch;
+        final Set<String> traces = ConcurrentHashMap.newKeySet();
+        volatile boolean expired = false;
+
+        Bucket(long epoch) {
+            this.epoch = epoch;
+        }
+    }
+
+    /**
+     *  Thread-safe Bloom filter with 3 hash functions, 16 bits for each item
+     */
+    private static final class BloomFilter {
+
+        private final AtomicLongArray bits;
+        private final int mask;
+
+        private final int capacity;
+        private final AtomicInteger count = new AtomicInteger(0);
+
+        BloomFilter(int maxItems) {
+            int size = Integer.highestOneBit(Math.max(maxItems, 64) * 16 - 1) << 1;
+            bits = new AtomicLongArray(size >>> 6);
+            mask = size - 1;
+            capacity = maxItems;
+        }
+
+        /**
+         * @return false on full
+         */
+        boolean add(String tag) {
+            if (count.incrementAndGet() > capacity) {
+                count.decrementAndGet();
+                return false;
+            }
+            int h1 = tag.hashCode();
+            int h2 = spread(h1);
+            for (int i = 0; i < 3; ++i) {
+                int pos = (h1 + i * h2) & mask;
+                long bit = 1L << (pos & 63);
+                int slot = pos >>> 6;
+                long old;
+                do {
+                    old = bits.get(slot);
+                } while ((old & bit) == 0 && !bits.compareAndSet(slot, old, old | bit));
+            }
+            return true;
+        }
+
+        boolean contains(String tag) {
+            int h1 = tag.hashCode();
+            int h2 = spread(h1);
+            for (int i = 0; i < 3; ++i) {
+                int pos = (h1 + i * h2) & mask;
+                if ((bits.get(pos >>> 6) & (1L << (pos & 63))) == 0) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        void clear() {
+            for (int i = 0; i < bits.length(); ++i) {
+                bits.set(i, 0);
+            }
+            count.set(0);
+        }
+
+        private static int spread(int x) {
+            x = ((x >>> 16) ^ x) * 0x45d9f3b;
+            x = ((x >>> 16) ^ x) * 0x45d9f3b;
+            return ((x >>> 16) ^ x) | 1;
+        }
+    }
+
 }
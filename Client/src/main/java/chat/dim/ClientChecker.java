@@ -52,13 +52,28 @@ import chat.dim.type.Pair;
 
 public class ClientChecker extends EntityChecker {
 
+    // collect meta/document queries for a while, and send them in batches
+    public static boolean BATCH_QUERY = true;
+
     private final WeakReference<CommonFacebook> barrack;
     private WeakReference<CommonMessenger> transceiver;
 
+    private final QueryScheduler scheduler;
+
     public ClientChecker(CommonFacebook facebook, AccountDBI db) {
         super(db);
         barrack = new WeakReference<>(facebook);
         transceiver = null;
+        scheduler = createQueryScheduler();
+    }
+
+    // override for customized scheduler
+    protected QueryScheduler createQueryScheduler() {
+        return new QueryScheduler();
+    }
+
+    public QueryScheduler getQueryScheduler() {
+        return scheduler;
     }
 
     protected CommonFacebook getFacebook() {
@@ -71,6 +86,7 @@ public class ClientChecker extends EntityChecker {
     }
     public void setMessenger(CommonMessenger messenger) {
         transceiver = messenger == null ? null : new WeakReference<>(messenger);
+        scheduler.setTransmitter(messenger);
     }
 
     @Override
@@ -81,6 +97,11 @@ public class ClientChecker extends EntityChecker {
             return false;
         }
         Log.info("querying meta for: " + identifier);
+        if (BATCH_QUERY) {
+            scheduler.start();
+            scheduler.queryMeta(identifier);
+            return true;
+        }
         CommonMessenger messenger = getMessenger();
         Content content = MetaCommand.query(identifier);
         Pair<InstantMessage, ReliableMessage> pair;
@@ -97,8 +118,13 @@ public class ClientChecker extends EntityChecker {
         }
         Date lastTime = getLastDocumentTime(identifier, documents);
         Log.info("querying documents for: " + identifier + ", last time: " + lastTime);
+        DocumentCommand content = DocumentCommand.query(identifier, lastTime);
+        if (BATCH_QUERY) {
+            scheduler.start();
+            scheduler.queryDocuments(identifier, content);
+            return true;
+        }
         CommonMessenger messenger = getMessenger();
-        Content content = DocumentCommand.query(identifier, lastTime);
         Pair<InstantMessage, ReliableMessage> pair;
         pair = messenger.sendContent(content, null, Station.ANY, 1);
         return pair != null && pair.second != null;
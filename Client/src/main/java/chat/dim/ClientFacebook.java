@@ -30,7 +30,6 @@
  */
 package chat.dim;
 
-import java.util.ArrayList;
 import java.util.List;
 
 import chat.dim.dbi.AccountDBI;
@@ -38,6 +37,7 @@ import chat.dim.protocol.BroadcastUtils;
 import chat.dim.protocol.Bulletin;
 import chat.dim.protocol.EntityType;
 import chat.dim.protocol.ID;
+import chat.dim.type.MemberList;
 
 /**
  *  Client Facebook with Address Name Service
@@ -129,12 +129,11 @@ public abstract class ClientFacebook extends CommonFacebook {
         List<ID> members = database.getMembers(group);
         checker.checkMembers(group, members);
         if (members == null || members.isEmpty()) {
-            members = new ArrayList<>();
-            members.add(owner);
-        } else {
-            assert members.get(0).equals(owner) : "group owner must be the first member: " + group;
+            return MemberList.from(owner, null);
         }
-        return members;
+        assert members.get(0).equals(owner) : "group owner must be the first member: " + group;
+        // indexed snapshot, keep the owner at the first place
+        return MemberList.from(owner, members);
     }
 
     @Override
@@ -153,7 +152,7 @@ public abstract class ClientFacebook extends CommonFacebook {
             return bots;
         }
         // get from bulletin document
-        return doc.getAssistants();
+        return MemberList.from(doc.getAssistants());
     }
 
     //
@@ -40,6 +40,8 @@ import chat.dim.log.Log;
 import chat.dim.mkm.User;
 import chat.dim.protocol.Content;
 import chat.dim.protocol.ContentType;
+import chat.dim.protocol.Document;
+import chat.dim.protocol.DocumentCommand;
 import chat.dim.protocol.FileContent;
 import chat.dim.protocol.ID;
 import chat.dim.protocol.InstantMessage;
@@ -182,6 +184,12 @@ public abstract class ClientMessagePacker extends CommonMessagePacker {
                 // visa.key changed?
                 // push my newest visa to the sender
                 iMsg = null;
+            } else if (errMsg.contains("failed to get message key")) {
+                // Exception from 'SecureMessagePacker::decrypt(sMsg, receiver)'
+                Log.warning("decrypt message error: " + e);
+                // reused key not found?
+                // push my visa to the sender for sending the whole key again
+                iMsg = null;
             } else if (errMsg.contains("receiver error")) {
                 // Exception from 'MessagePacker::decryptMessage(sMsg)'
                 Log.error("decrypt message error: " + e);
@@ -201,7 +209,11 @@ public abstract class ClientMessagePacker extends CommonMessagePacker {
             iMsg = getFailedMessage(sMsg);
         } else {
             Content content = iMsg.getContent();
-            if (content instanceof FileContent) {
+            if (content instanceof DocumentCommand) {
+                // the sender pushed its visa, perhaps the message keys were lost,
+                // so stop reusing the message key to this contact
+                checkVisaUpdated((DocumentCommand) content, sMsg);
+            } else if (content instanceof FileContent) {
                 FileContent file = (FileContent) content;
                 if (file.getPassword() == null && file.getURL() != null) {
                     // now received file content with remote data,
@@ -219,6 +231,28 @@ public abstract class ClientMessagePacker extends CommonMessagePacker {
         return iMsg;
     }
 
+    protected void checkVisaUpdated(DocumentCommand content, SecureMessage sMsg) {
+        if (!CommonMessenger.REUSE_KEY) {
+            return;
+        }
+        ID sender = sMsg.getSender();
+        ID receiver = sMsg.getReceiver();
+        if (!receiver.isUser() || !sender.equals(content.getIdentifier())) {
+            // not a personal visa
+            return;
+        }
+        List<Document> documents = content.getDocuments();
+        if (documents == null) {
+            return;
+        }
+        for (Document doc : documents) {
+            if (doc instanceof Visa) {
+                getMessenger().resetReusedKey(receiver, sender);
+                break;
+            }
+        }
+    }
+
     protected boolean pushVisa(ID contact) {
         // visa.key not updated?
         CommonFacebook facebook = getFacebook();
@@ -0,0 +1,339 @@
+/* license: https://mit-license.org
+ *
+ *  DIM-SDK : Decentralized Instant Messaging Software Development Kit
+ *
+ *                                Written in 2026 by Moky <albert.moky@gmail.com>
+ *
+ * ==============================================================================
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2026 Albert Moky
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * ==============================================================================
+ */
+package chat.dim;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+import chat.dim.log.Log;
+import chat.dim.mkm.Station;
+import chat.dim.protocol.ArrayContent;
+import chat.dim.protocol.Content;
+import chat.dim.protocol.DocumentCommand;
+import chat.dim.protocol.ID;
+import chat.dim.protocol.InstantMessage;
+import chat.dim.protocol.MetaCommand;
+import chat.dim.protocol.ReliableMessage;
+import chat.dim.skywalker.Runner;
+import chat.dim.type.Pair;
+
+/**
+ *  Query Scheduler
+ *  ~~~~~~~~~~~~~~~
+ *
+ *  Collects meta/document queries for a short window, then sends them
+ *  to the station in batches (array contents), instead of one message
+ *  for each ID.
+ *
+ *  Duplicated queries are dropped while waiting; the queries already
+ *  sent are guarded by the entity checker (query expires).
+ *  A meta query will be dropped if the documents for the same ID are
+ *  querying too, because the station will respond the meta with them.
+ */
+public class QueryScheduler extends Runner {
+
+    public static long WINDOW = 300;    // milliseconds
+    public static int BATCH_SIZE = 32;  // max queries in one message
+
+    // pending queries, guarded by 'lock'
+    private final Map<ID, Content> metaQueries = new LinkedHashMap<>();
+    private final Map<ID, Content> docsQueries = new LinkedHashMap<>();
+    private long firstTime = 0;  // time of the oldest pending query
+    private final Object lock = new Object();
+
+    private WeakReference<Transmitter> transmitterRef = null;
+
+    private Thread thread = null;
+
+    // metrics
+    private long queuedCount = 0;
+    private long coalescedCount = 0;
+    private long sentCount = 0;
+    private long batchCount = 0;
+    private long failedCount = 0;
+
+    public QueryScheduler() {
+        super(Runner.INTERVAL_SLOW);
+    }
+
+    public Transmitter getTransmitter() {
+        WeakReference<Transmitter> ref = transmitterRef;
+        return ref == null ? null : ref.get();
+    }
+    public void setTransmitter(Transmitter transmitter) {
+        transmitterRef = transmitter == null ? null : new WeakReference<>(transmitter);
+    }
+
+    /**
+     *  Add meta query
+     *
+     * @param identifier - entity ID
+     * @return false on duplicated
+     */
+    public boolean queryMeta(ID identifier) {
+        return append(metaQueries, identifier, MetaCommand.query(identifier));
+    }
+
+    /**
+     *  Add documents query
+     *
+     * @param identifier - entity ID
+     * @param command    - document query command with last time
+     * @return false on duplicated
+     */
+    public boolean queryDocuments(ID identifier, DocumentCommand command) {
+        return append(docsQueries, identifier, command);
+    }
+
+    private boolean append(Map<ID, Content> queries, ID identifier, Content command) {
+        synchronized (lock) {
+            ++queuedCount;
+            if (queries.containsKey(identifier)) {
+                ++coalescedCount;
+                return false;
+            }
+            if (metaQueries.isEmpty() && docsQueries.isEmpty()) {
+                firstTime = System.currentTimeMillis();
+            }
+            queries.put(identifier, command);
+            if (metaQueries.size() + docsQueries.size() >= BATCH_SIZE) {
+                // a whole batch is ready, wake up the sender
+                lock.notifyAll();
+            }
+        }
+        return true;
+    }
+
+    private List<Content> drain() {
+        List<Content> commands = new ArrayList<>();
+        synchronized (lock) {
+            for (Map.Entry<ID, Content> entry : metaQueries.entrySet()) {
+                if (docsQueries.containsKey(entry.getKey())) {
+                    // meta will be responded with documents
+                    ++coalescedCount;
+                    continue;
+                }
+                commands.add(entry.getValue());
+            }
+            commands.addAll(docsQueries.values());
+            metaQueries.clear();
+            docsQueries.clear();
+        }
+        return commands;
+    }
+
+    private boolean isDue() {
+        synchronized (lock) {
+            int count = metaQueries.size() + docsQueries.size();
+            if (count == 0) {
+                return false;
+            }
+            return count >= BATCH_SIZE || System.currentTimeMillis() - firstTime >= WINDOW;
+        }
+    }
+
+    /**
+     *  Send all pending queries now
+     *
+     * @return number of queries sent
+     */
+    public int flush() {
+        List<Content> commands = drain();
+        if (commands.isEmpty()) {
+            return 0;
+        }
+        Transmitter transmitter = getTransmitter();
+        if (transmitter == null) {
+            Log.error("transmitter not set, drop " + commands.size() + " queries");
+            synchronized (lock) {
+                failedCount += commands.size();
+            }
+            return 0;
+        }
+        int success = 0;
+        int failed = 0;
+        int batches = 0;
+        int size;
+        List<Content> batch;
+        for (int start = 0; start < commands.size(); start += BATCH_SIZE) {
+            size = Math.min(BATCH_SIZE, commands.size() - start);
+            batch = commands.subList(start, start + size);
+            if (send(transmitter, batch)) {
+                success += size;
+            } else {
+                failed += size;
+            }
+            ++batches;
+        }
+        Log.info("sent " + success + " queries in " + batches + " message(s), failed: " + failed);
+        synchronized (lock) {
+            sentCount += success;
+            failedCount += failed;
+            batchCount += batches;
+        }
+        return success;
+    }
+
+    protected boolean send(Transmitter transmitter, List<Content> batch) {
+        Content content;
+        if (batch.size() == 1) {
+            content = batch.get(0);
+        } else {
+            content = ArrayContent.create(new ArrayList<>(batch));
+        }
+        Pair<InstantMessage, ReliableMessage> pair;
+        try {
+            pair = transmitter.sendContent(content, null, Station.ANY, 1);
+        } catch (RuntimeException e) {
+            Log.error("failed to send queries: " + e);
+            return false;
+        }
+        return pair != null && pair.second != null;
+    }
+
+    //
+    //  Metrics
+    //
+
+    public int getPendingCount() {
+        synchronized (lock) {
+            return metaQueries.size() + docsQueries.size();
+        }
+    }
+
+    public long getQueuedCount() {
+        synchronized (lock) {
+            return queuedCount;
+        }
+    }
+
+    public long getCoalescedCount() {
+        synchronized (lock) {
+            return coalescedCount;
+        }
+    }
+
+    public long getSentCount() {
+        synchronized (lock) {
+            return sentCount;
+        }
+    }
+
+    public long getBatchCount() {
+        synchronized (lock) {
+            return batchCount;
+        }
+    }
+
+    public long getFailedCount() {
+        synchronized (lock) {
+            return failedCount;
+        }
+    }
+
+    @Override
+    public String toString() {
+        synchronized (lock) {
+            return "<" + getClass().getSimpleName()
+                    + " pending=" + (metaQueries.size() + docsQueries.size())
+                    + " queued=" + queuedCount + " coalesced=" + coalescedCount
+                    + " sent=" + sentCount + " batches=" + batchCount
+                    + " failed=" + failedCount + " />";
+        }
+    }
+
+    //
+    //  Runner
+    //
+
+    @Override
+    public boolean process() {
+        if (!isDue()) {
+            return false;
+        }
+        flush();
+        return true;
+    }
+
+    @Override
+    protected void idle() {
+        synchronized (lock) {
+            if (metaQueries.size() + docsQueries.size() >= BATCH_SIZE) {
+                return;
+            }
+            try {
+                lock.wait(WINDOW);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    public synchronized void start() {
+        if (thread != null) {
+            // already started
+            return;
+        }
+        Thread thr = new Thread(this);
+        thr.setDaemon(true);
+        thr.start();
+        thread = thr;
+    }
+
+    /**
+     *  Stop the background thread and send pending queries
+     */
+    @Override
+    public void stop() {
+        super.stop();
+        synchronized (lock) {
+            lock.notifyAll();
+        }
+        Thread thr;
+        synchronized (this) {
+            thr = thread;
+            thread = null;
+        }
+        if (thr != null) {
+            // waiting 2 seconds for stopping the thread
+            try {
+                thr.join(2000);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }
+        flush();
+    }
+
+}
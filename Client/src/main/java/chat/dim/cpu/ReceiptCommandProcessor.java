@@ -32,11 +32,15 @@ package chat.dim.cpu;
 
 import java.util.List;
 
+import chat.dim.CommonMessenger;
 import chat.dim.Facebook;
 import chat.dim.Messenger;
+import chat.dim.Session;
 import chat.dim.group.GroupDelegate;
 import chat.dim.group.SharedGroupManager;
+import chat.dim.network.BaseSession;
 import chat.dim.protocol.Content;
+import chat.dim.protocol.Envelope;
 import chat.dim.protocol.ReceiptCommand;
 import chat.dim.protocol.ReliableMessage;
 
@@ -50,10 +54,30 @@ public class ReceiptCommandProcessor extends BaseCommandProcessor {
     public List<Content> processContent(Content content, ReliableMessage rMsg) {
         //assert content instanceof ReceiptCommand : "receipt command error: " + content;
         if (content instanceof ReceiptCommand) {
+            ReceiptCommand receipt = (ReceiptCommand) content;
             GroupDelegate delegate = SharedGroupManager.getInstance().getDelegate();
-            delegate.updateRespondTime((ReceiptCommand) content, rMsg.getEnvelope());
+            delegate.updateRespondTime(receipt, rMsg.getEnvelope());
+            // the original message was received, remove it from the spool
+            retireMessage(receipt);
         }
         // no need to response receipt command
         return null;
     }
+
+    protected boolean retireMessage(ReceiptCommand receipt) {
+        Envelope env = receipt.getOriginalEnvelope();
+        String signature = receipt.getOriginalSignature();
+        if (env == null || signature == null) {
+            return false;
+        }
+        Messenger messenger = getMessenger();
+        if (!(messenger instanceof CommonMessenger)) {
+            return false;
+        }
+        Session session = ((CommonMessenger) messenger).getSession();
+        if (session instanceof BaseSession) {
+            return ((BaseSession) session).retireMessage(env.getReceiver(), signature);
+        }
+        return false;
+    }
 }
@@ -31,7 +31,9 @@
 package chat.dim.cpu.group;
 
 import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import chat.dim.Facebook;
 import chat.dim.Messenger;
@@ -157,8 +159,9 @@ public class InviteCommandProcessor extends ResetCommandProcessor {
     protected Pair<List<ID>, List<ID>> calculateInvited(List<ID> members, List<ID> inviteList) {
         List<ID> newMembers = Copier.copyList(members);
         List<ID> addedList = new ArrayList<>();
+        Set<ID> existed = new HashSet<>(members);
         for (ID item : inviteList) {
-            if (newMembers.contains(item)) {
+            if (!existed.add(item)) {
                 continue;
             }
             newMembers.add(item);
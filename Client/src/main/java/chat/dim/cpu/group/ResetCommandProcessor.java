@@ -41,6 +41,7 @@ import chat.dim.protocol.Content;
 import chat.dim.protocol.ID;
 import chat.dim.protocol.ReliableMessage;
 import chat.dim.protocol.group.ResetCommand;
+import chat.dim.type.MemberList;
 import chat.dim.type.Pair;
 import chat.dim.type.Triplet;
 
@@ -163,16 +164,18 @@ public class ResetCommandProcessor extends GroupCommandProcessor {
     protected Pair<List<ID>, List<ID>> calculateReset(List<ID> oldMembers, List<ID> newMembers) {
         List<ID> addList = new ArrayList<>();
         List<ID> removeList = new ArrayList<>();
+        MemberList oldSnapshot = MemberList.from(oldMembers);
+        MemberList newSnapshot = MemberList.from(newMembers);
         // build invited-list
-        for (ID item : newMembers) {
-            if (oldMembers.contains(item)) {
+        for (ID item : newSnapshot) {
+            if (oldSnapshot.contains(item)) {
                 continue;
             }
             addList.add(item);
         }
         // build expelled-list
-        for (ID item : oldMembers) {
-            if (newMembers.contains(item)) {
+        for (ID item : oldSnapshot) {
+            if (newSnapshot.contains(item)) {
                 continue;
             }
             removeList.add(item);
@@ -34,6 +34,9 @@ import java.util.ArrayList;
 import java.util.Date;
 import java.util.List;
 
+import chat.dim.CommonFacebook;
+import chat.dim.EntityChecker;
+import chat.dim.GroupHistoryIndex;
 import chat.dim.dbi.AccountDBI;
 import chat.dim.log.Log;
 import chat.dim.mkm.DocumentUtils;
@@ -76,11 +79,20 @@ public class GroupCommandHelper extends TripletsHelper {
         }
         // update group history
         AccountDBI db = getDatabase();
+        GroupHistoryIndex index = getGroupHistoryIndex();
         if (content instanceof ResetCommand) {
             Log.warning("cleaning group history for 'reset' command: " + rMsg.getSender() + " => " + group);
-            return db.clearGroupMemberHistories(group);
+            if (!db.clearGroupMemberHistories(group)) {
+                return false;
+            }
+            // reload from database next time
+            index.remove(group);
+            return true;
+        } else if (!db.saveGroupHistory(content, rMsg, group)) {
+            return false;
         }
-        return db.saveGroupHistory(content, rMsg, group);
+        index.append(group, content);
+        return true;
     }
     public List<Pair<GroupCommand, ReliableMessage>> getGroupHistories(ID group) {
         AccountDBI db = getDatabase();
@@ -92,11 +104,25 @@ public class GroupCommandHelper extends TripletsHelper {
     }
     boolean clearGroupMemberHistories(ID group) {
         AccountDBI db = getDatabase();
-        return db.clearGroupMemberHistories(group);
+        if (!db.clearGroupMemberHistories(group)) {
+            return false;
+        }
+        getGroupHistoryIndex().clearMembers(group);
+        return true;
     }
     boolean clearGroupAdminHistories(ID group) {
         AccountDBI db = getDatabase();
-        return db.clearGroupAdminHistories(group);
+        if (!db.clearGroupAdminHistories(group)) {
+            return false;
+        }
+        getGroupHistoryIndex().clearAdmins(group);
+        return true;
+    }
+
+    protected GroupHistoryIndex getGroupHistoryIndex() {
+        CommonFacebook facebook = getFacebook();
+        EntityChecker checker = facebook.getEntityChecker();
+        return checker.getGroupHistoryIndex();
     }
 
     /**
@@ -30,12 +30,26 @@
  */
 package chat.dim.group;
 
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.HashMap;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+import java.util.concurrent.FutureTask;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 import chat.dim.CommonFacebook;
 import chat.dim.CommonMessenger;
 import chat.dim.EntityChecker;
+import chat.dim.MessageTemplate;
+import chat.dim.crypto.SymmetricKey;
 import chat.dim.log.Log;
 import chat.dim.protocol.Bulletin;
 import chat.dim.protocol.Content;
@@ -72,6 +86,63 @@ public class GroupEmitter extends TripletsHelper {
     //
     public static int SECRET_GROUP_LIMIT = 16;
 
+    // NOTICE: encrypt & sign messages for members concurrently
+    //
+    //      if PARALLELISM > 1,
+    //          the jobs for each member (encrypt message key with the member's
+    //          visa key, or encrypt & sign the split message for tiny group)
+    //          will be done by a shared pool with this number of threads;
+    //      else,
+    //          do them one by one in the caller's thread.
+    //
+    //      the caller still waits for all jobs done before returning, so the
+    //      messages for the same member are queued in the order of sending.
+    //
+    public static int PARALLELISM = Math.min(4, Runtime.getRuntime().availableProcessors());
+
+    //  NOTICE: the messages split for members are all the same except 'receiver' & 'key',
+    //          if this flag is set, the shared body will be encoded only once,
+    //          and the data package for each member will be spliced from it.
+    public static boolean SERIALIZE_ONCE = true;
+
+    private static ExecutorService workers = null;
+    private static int workersCount = 0;
+
+    protected static synchronized ExecutorService getWorkers() {
+        int count = PARALLELISM;
+        if (count < 2) {
+            // parallel mode disabled
+            return null;
+        } else if (workers != null && workersCount == count) {
+            return workers;
+        }
+        // NOTICE: when parallelism changed, the old pool is not shut down here,
+        //         because other callers may still be submitting jobs to it;
+        //         its idle threads will exit after the keep alive time.
+        ThreadPoolExecutor pool = new ThreadPoolExecutor(count, count, 60, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<>(), runnable -> {
+            Thread thr = new Thread(runnable, "GroupEmitter-worker");
+            thr.setDaemon(true);
+            return thr;
+        });
+        pool.allowCoreThreadTimeOut(true);
+        workers = pool;
+        workersCount = count;
+        return workers;
+    }
+
+    private static <V> Future<V> submit(ExecutorService executor, Callable<V> job) {
+        try {
+            return executor.submit(job);
+        } catch (RejectedExecutionException e) {
+            // pool unavailable, do it in the caller's thread
+            Log.warning("group job rejected, run it directly: " + e);
+            FutureTask<V> task = new FutureTask<>(job);
+            task.run();
+            return task;
+        }
+    }
+
     protected final GroupPacker packer;
 
     public GroupEmitter(GroupDelegate dataSource) {
@@ -238,8 +309,17 @@ public class GroupEmitter extends TripletsHelper {
 
         //
         //  1. pack message
+        //     (encrypt message key for all members concurrently first)
         //
-        ReliableMessage rMsg = packer.encryptAndSignMessage(iMsg);
+        ReliableMessage rMsg;
+        boolean prepared = prepareEncryptedKeys(allMembers, iMsg);
+        try {
+            rMsg = packer.encryptAndSignMessage(iMsg);
+        } finally {
+            if (prepared) {
+                messenger.setEncryptedKeys(null, null);
+            }
+        }
         if (rMsg == null) {
             assert false : "failed to encrypt & sign message: " + sender + " => " + group;
             return null;
@@ -249,22 +329,83 @@ public class GroupEmitter extends TripletsHelper {
         //  2. split messages
         //
         List<ReliableMessage> messages = packer.splitMessage(rMsg, allMembers);
+        MessageTemplate template = SERIALIZE_ONCE ? messenger.createMessageTemplate(rMsg) : null;
+        messenger.setMessageTemplate(template);
         ID receiver;
         boolean ok;
-        for (ReliableMessage item : messages) {
-            receiver = item.getReceiver();
-            if (sender.equals(receiver)) {
-                assert false : "cycled message: " + sender + " => " + receiver + ", " + group;
-                continue;
+        try {
+            for (ReliableMessage item : messages) {
+                receiver = item.getReceiver();
+                if (sender.equals(receiver)) {
+                    assert false : "cycled message: " + sender + " => " + receiver + ", " + group;
+                    continue;
+                }
+                // send message
+                ok = messenger.sendReliableMessage(item, priority);
+                assert ok : "failed to send message: " + sender + " => " + receiver + ", " + group;
+            }
+        } finally {
+            if (template != null) {
+                messenger.setMessageTemplate(null);
             }
-            // send message
-            ok = messenger.sendReliableMessage(item, priority);
-            assert ok : "failed to send message: " + sender + " => " + receiver + ", " + group;
         }
 
         return rMsg;
     }
 
+    /**
+     *  Encrypt message key with each member's visa key concurrently,
+     *  the results will be picked up by the messenger when packing this message
+     *
+     * @return false on parallel mode disabled
+     */
+    private boolean prepareEncryptedKeys(List<ID> allMembers, InstantMessage iMsg) {
+        ExecutorService executor = getWorkers();
+        if (executor == null) {
+            return false;
+        }
+        CommonMessenger messenger = getMessenger();
+        SymmetricKey password = messenger.getEncryptKey(iMsg);
+        if (password == null) {
+            return false;
+        }
+        byte[] data = messenger.serializeKey(password, iMsg);
+        if (data == null) {
+            return false;
+        }
+        ID sender = iMsg.getSender();
+        List<Pair<ID, Future<byte[]>>> tasks = new ArrayList<>(allMembers.size());
+        for (ID member : allMembers) {
+            if (sender.equals(member)) {
+                continue;
+            }
+            tasks.add(new Pair<>(member, submit(executor, () -> messenger.encryptKey(data, member, iMsg))));
+        }
+        Map<ID, byte[]> keys = new HashMap<>();
+        byte[] encrypted;
+        for (Pair<ID, Future<byte[]>> item : tasks) {
+            encrypted = waitFor(item.second);
+            if (encrypted != null) {
+                keys.put(item.first, encrypted);
+            }
+        }
+        messenger.setEncryptedKeys(data, keys);
+        return true;
+    }
+
+    private static <V> V waitFor(Future<V> future) {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            future.cancel(true);
+            Log.error("group job interrupted: " + e);
+        } catch (ExecutionException e) {
+            Log.error("group job error: " + e.getCause());
+        }
+        return null;
+    }
+
     /**
      *  Split and send (encrypt + sign) group messages to all members one by one
      */
@@ -287,6 +428,8 @@ public class GroupEmitter extends TripletsHelper {
         //  1. split messages
         //
         List<InstantMessage> messages = packer.splitMessage(iMsg, allMembers);
+        ExecutorService executor = messages.size() > 1 ? getWorkers() : null;
+        List<Future<ReliableMessage>> tasks = new ArrayList<>(messages.size());
         ID receiver;
         ReliableMessage rMsg;
         for (InstantMessage item : messages) {
@@ -298,6 +441,13 @@ public class GroupEmitter extends TripletsHelper {
             //
             //  2. send message
             //
+            if (executor != null) {
+                // the attachments will be fixed when serializing, don't share them between workers
+                copyAttachments(item);
+                // encrypt, sign & queue in the pool
+                tasks.add(submit(executor, () -> messenger.sendInstantMessage(item, priority)));
+                continue;
+            }
             rMsg = messenger.sendInstantMessage(item, priority);
             if (rMsg == null) {
                 Log.error("failed to send message: " + receiver + " in group " + group);
@@ -305,9 +455,30 @@ public class GroupEmitter extends TripletsHelper {
             }
             success += 1;
         }
+        // wait for all members
+        for (Future<ReliableMessage> task : tasks) {
+            rMsg = waitFor(task);
+            if (rMsg == null) {
+                Log.error("failed to send message in group " + group);
+                continue;
+            }
+            success += 1;
+        }
 
         // done!
         return success;
     }
 
+    @SuppressWarnings("unchecked")
+    private static void copyAttachments(InstantMessage item) {
+        Object meta = item.get("meta");
+        if (meta instanceof Map) {
+            item.put("meta", new HashMap<>((Map<String, Object>) meta));
+        }
+        Object visa = item.get("visa");
+        if (visa instanceof Map) {
+            item.put("visa", new HashMap<>((Map<String, Object>) visa));
+        }
+    }
+
 }
@@ -51,6 +51,7 @@ import chat.dim.protocol.ReliableMessage;
 import chat.dim.protocol.group.InviteCommand;
 import chat.dim.protocol.group.ResetCommand;
 import chat.dim.type.Copier;
+import chat.dim.type.MemberList;
 import chat.dim.type.Pair;
 
 public class GroupManager extends TripletsHelper {
@@ -119,7 +120,7 @@ public class GroupManager extends TripletsHelper {
         //
         //  2. create group with name
         //
-        Register register = new Register(getDatabase());
+        Register register = new Register(getDatabase(), getFacebook().getArchivist());
         ID group = register.createGroup(founder, groupName);
         Log.info("new group: " + group + " (" + groupName + "), founder: " + founder);
 
@@ -195,8 +196,9 @@ public class GroupManager extends TripletsHelper {
         // member list OK, check expelled members
         List<ID> oldMembers = delegate.getMembers(group);
         List<ID> expelList = new ArrayList<>();
+        MemberList newSnapshot = MemberList.from(newMembers);
         for (ID item : oldMembers) {
-            if (!newMembers.contains(item)) {
+            if (!newSnapshot.contains(item)) {
                 expelList.add(item);
             }
         }
@@ -293,13 +295,10 @@ public class GroupManager extends TripletsHelper {
         if (canReset) {
             // You are the owner/admin, then
             // append new members and 'reset' the group
+            // (the snapshot drops duplicated items)
             List<ID> members = Copier.copyList(oldMembers);
-            for (ID item : newMembers) {
-                if (!members.contains(item)) {
-                    members.add(item);
-                }
-            }
-            return resetMembers(members, group);
+            members.addAll(newMembers);
+            return resetMembers(MemberList.from(members), group);
         } else if (!isMember) {
             assert false : "cannot invite member into group: " + group;
             return false;
@@ -43,9 +43,15 @@ import chat.dim.protocol.ID;
 import chat.dim.protocol.InstantMessage;
 import chat.dim.protocol.ReliableMessage;
 import chat.dim.protocol.SecureMessage;
+import chat.dim.type.OverlayMap;
 
 public class GroupPacker extends TripletsHelper {
 
+    // split group message into views sharing one snapshot of the body,
+    // each view only keeps its own 'receiver' & 'key';
+    // set false to copy the whole message for each member
+    public static boolean LIGHTWEIGHT_SPLIT = true;
+
     public GroupPacker(GroupDelegate dataSource) {
         super(dataSource);
     }
@@ -79,23 +85,28 @@ public class GroupPacker extends TripletsHelper {
     }
 
     public List<InstantMessage> splitMessage(InstantMessage iMsg, List<ID> allMembers) {
-        List<InstantMessage> messages = new ArrayList<>();
-        ID sender = iMsg.getSender();
+        List<ID> receivers = getReceivers(iMsg.getSender(), allMembers, iMsg.getGroup());
+        List<InstantMessage> messages = new ArrayList<>(receivers.size());
+
+        // lightweight mode: take snapshots of the message body & content only once,
+        // every member gets a view with its own 'receiver' & content overlay,
+        // so modifications by different processes will not conflict.
+        Map<String, Object> body = LIGHTWEIGHT_SPLIT ? iMsg.copyMap(false) : null;
+        Map<String, Object> content = LIGHTWEIGHT_SPLIT ? iMsg.getContent().copyMap(false) : null;
 
         Map<String, Object> info;
         InstantMessage item;
-        for (ID receiver : allMembers) {
-            if (sender.equals(receiver)) {
-                Log.info("skip cycled message: " + receiver + ", " + iMsg.getGroup());
-                continue;
+        for (ID receiver : receivers) {
+            if (body == null) {
+                info = iMsg.copyMap(false);
+                // Copy the content to avoid conflicts caused by modifications
+                // by different processes.
+                // Notice: there is no need to use deep copying here.
+                info.put("content", iMsg.getContent().copyMap(false));
             } else {
-                Log.info("split group message for member: " + receiver);
+                info = new OverlayMap(body);
+                info.put("content", new OverlayMap(content));
             }
-            info = iMsg.copyMap(false);
-            // Copy the content to avoid conflicts caused by modifications
-            // by different processes.
-            // Notice: there is no need to use deep copying here.
-            info.put("content", iMsg.getContent().copyMap(false));
             // replace 'receiver' with member ID
             info.put("receiver", receiver.toString());
             item = InstantMessage.parse(info);
@@ -105,49 +116,76 @@ public class GroupPacker extends TripletsHelper {
             }
             messages.add(item);
         }
+        Log.info("split group message for " + messages.size() + " members, group: " + iMsg.getGroup());
 
         return messages;
     }
 
     public List<ReliableMessage> splitMessage(ReliableMessage rMsg, List<ID> allMembers) {
-        List<ReliableMessage> messages = new ArrayList<>();
-        ID sender = rMsg.getSender();
+        List<ID> receivers = getReceivers(rMsg.getSender(), allMembers, rMsg.getGroup());
+        List<ReliableMessage> messages = new ArrayList<>(receivers.size());
 
         assert !rMsg.containsKey("key") : "should not happen";
-        Map<String, Object> keys = rMsg.getEncryptedKeys();
-        if (keys == null) {
-            keys = new HashMap<>();
-            // TODO: get key digest
-        }
+        Map<String, Object> keys = getEncryptedKeys(rMsg);
         Object keyData;  // Base-64
 
+        // lightweight mode: take snapshot of the message body (without 'keys') only once,
+        // every member gets a view overlaying its own 'receiver' & 'key'
+        Map<String, Object> body = null;
+        if (LIGHTWEIGHT_SPLIT) {
+            body = rMsg.copyMap(false);
+            body.remove("keys");
+        }
+
         Map<String, Object> info;
         ReliableMessage item;
-        for (ID receiver : allMembers) {
-            if (sender.equals(receiver)) {
-                Log.info("skip cycled message: " + receiver + ", " + rMsg.getGroup());
-                continue;
+        for (ID receiver : receivers) {
+            if (body == null) {
+                info = rMsg.copyMap(false);
+                info.remove("keys");
             } else {
-                Log.info("split group message for member: " + receiver);
+                info = new OverlayMap(body);
             }
-            info = rMsg.copyMap(false);
             // replace 'receiver' with member ID
             info.put("receiver", receiver.toString());
             // fetch encrypted key data
-            info.remove("keys");
             keyData = keys.get(receiver.toString());
             if (keyData != null) {
                 info.put("key", keyData);
             }
             item = ReliableMessage.parse(info);
             if (item == null) {
-                assert false : "failed to repack message: " + info;
+                assert false : "failed to repack message: " + receiver;
                 continue;
             }
             messages.add(item);
         }
+        Log.info("split group message for " + messages.size() + " members, group: " + rMsg.getGroup());
 
         return messages;
     }
 
+    // members except the sender
+    private static List<ID> getReceivers(ID sender, List<ID> allMembers, ID group) {
+        List<ID> receivers = new ArrayList<>(allMembers.size());
+        for (ID member : allMembers) {
+            if (sender.equals(member)) {
+                Log.info("skip cycled message: " + member + ", " + group);
+                continue;
+            }
+            receivers.add(member);
+        }
+        return receivers;
+    }
+
+    // member ID => encrypted key data
+    private static Map<String, Object> getEncryptedKeys(ReliableMessage rMsg) {
+        Map<String, Object> keys = rMsg.getEncryptedKeys();
+        if (keys == null) {
+            keys = new HashMap<>();
+            // TODO: get key digest
+        }
+        return keys;
+    }
+
 }
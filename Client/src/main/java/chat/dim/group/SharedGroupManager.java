@@ -31,6 +31,7 @@
 package chat.dim.group;
 
 import java.lang.ref.WeakReference;
+import java.util.ArrayList;
 import java.util.List;
 
 import chat.dim.CommonFacebook;
@@ -43,7 +44,7 @@ import chat.dim.protocol.ID;
 import chat.dim.protocol.InstantMessage;
 import chat.dim.protocol.Meta;
 import chat.dim.protocol.ReliableMessage;
-import chat.dim.type.Copier;
+import chat.dim.type.MemberList;
 
 
 // Singleton
@@ -274,9 +275,12 @@ public final class SharedGroupManager implements Group.DataSource {
         if (canReset) {
             // You are the owner/admin, then
             // remove the members and 'reset' the group
-            List<ID> members = Copier.copyList(oldMembers);
-            for (ID item : removingMembers) {
-                members.remove(item);
+            MemberList removing = MemberList.from(removingMembers);
+            List<ID> members = new ArrayList<>(oldMembers.size());
+            for (ID item : oldMembers) {
+                if (!removing.contains(item)) {
+                    members.add(item);
+                }
             }
             return resetGroupMembers(members, group);
         }
@@ -45,6 +45,7 @@ import chat.dim.mtp.StreamArrival;
 import chat.dim.net.Connection;
 import chat.dim.port.Arrival;
 import chat.dim.port.Porter;
+import chat.dim.queue.MessageSpool;
 import chat.dim.tcp.StreamHub;
 import chat.dim.threading.BackgroundThreads;
 import chat.dim.utils.ArrayUtils;
@@ -81,6 +82,14 @@ public class ClientSession extends BaseSession {
 
     private Thread thread;
 
+    // shared event loops for running many sessions in one process,
+    // null means each session runs in its own thread
+    public static SessionMultiplexer MULTIPLEXER = null;
+
+    // durable spool for outgoing messages shared by sessions,
+    // null means the waiting messages would be lost when the app exits
+    public static MessageSpool SPOOL = null;
+
     public ClientSession(Station server, SessionDBI sdb) {
         super(new InetSocketAddress(server.getHost(), server.getPort()), null, sdb);
         station = server;
@@ -88,6 +97,7 @@ public class ClientSession extends BaseSession {
         key = null;
         accepted = false;
         thread = null;
+        setSpool(SPOOL);
     }
 
     public Station getStation() {
@@ -120,6 +130,15 @@ public class ClientSession extends BaseSession {
     }
     public void setAccepted(boolean flag) {
         accepted = flag;
+        if (flag) {
+            // handshake accepted, time to replay the spooled messages
+            wakeUp();
+        }
+    }
+
+    @Override
+    protected boolean isReplayable() {
+        return accepted && super.isReplayable();
     }
 
     public boolean isReady() {
@@ -147,10 +166,16 @@ public class ClientSession extends BaseSession {
 
     public void start(SessionState.Delegate delegate) {
         stop();
-        Thread thr = new Thread(this);
-        thr.setDaemon(true);
-        thr.start();
-        thread = thr;
+        SessionMultiplexer multiplexer = MULTIPLEXER;
+        if (multiplexer != null) {
+            // driven by shared event loop
+            multiplexer.attach(this);
+        } else {
+            Thread thr = new Thread(this);
+            thr.setDaemon(true);
+            thr.start();
+            thread = thr;
+        }
 
         // start state machine
         fsm.setDelegate(delegate);
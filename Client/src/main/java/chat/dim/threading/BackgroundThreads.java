@@ -25,39 +25,92 @@
  */
 package chat.dim.threading;
 
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import chat.dim.log.Log;
+
 public final class BackgroundThreads {
 
     //
-    //  Tasks
+    //  Config (must be set before the first task)
     //
 
-    private static final TaskPool rushing = new TaskPool();
-    private static final TaskPool waiting = new TaskPool();
+    // threads for rushing tasks only
+    public static int URGENT_THREADS = 1;
+    // threads for both rushing & waiting tasks
+    public static int TRIVIAL_THREADS = 2;
+    // run waiting tasks in virtual threads (JDK 21+)
+    public static boolean VIRTUAL_THREADS = false;
+
+    private static TaskExecutor executor = null;
+
+    public static synchronized TaskExecutor getExecutor() {
+        TaskExecutor pool = executor;
+        if (pool == null) {
+            pool = new TaskExecutor("BackgroundThreads", URGENT_THREADS, TRIVIAL_THREADS, VIRTUAL_THREADS);
+            pool.start();
+            executor = pool;
+        }
+        return pool;
+    }
+
+    //
+    //  Tasks
+    //
 
     public static void wait(Runnable runnable) {
-        waiting.addTask(runnable);
+        try {
+            getExecutor().execute(runnable);
+        } catch (RejectedExecutionException e) {
+            Log.error("background threads stopped, drop task: " + e.getMessage());
+        }
     }
     public static void rush(Runnable runnable) {
-        rushing.addTask(runnable);
+        try {
+            getExecutor().rush(runnable);
+        } catch (RejectedExecutionException e) {
+            Log.error("background threads stopped, drop task: " + e.getMessage());
+        }
     }
 
     //
-    //  Thread pool
+    //  Shutdown
     //
 
-    private static final TaskThread thread1 = new TaskThread.Urgency(rushing);
-    private static final TaskThread thread2 = new TaskThread.Trivial(rushing, waiting);
-    private static final TaskThread thread3 = new TaskThread.Trivial(rushing, waiting);
+    /**
+     *  Stop accepting new tasks, the threads will exit after all queued tasks done
+     */
+    public static synchronized void stop() {
+        TaskExecutor pool = executor;
+        if (pool == null) {
+            // never started, just reject the coming tasks
+            pool = new TaskExecutor("BackgroundThreads", URGENT_THREADS, TRIVIAL_THREADS, false);
+            executor = pool;
+        }
+        pool.shutdown();
+    }
 
-    public static void stop() {
-        thread1.running = false;
-        thread2.running = false;
-        thread3.running = false;
+    /**
+     *  Stop all threads immediately
+     *
+     * @return tasks never run
+     */
+    public static List<Runnable> stopNow() {
+        TaskExecutor pool;
+        synchronized (BackgroundThreads.class) {
+            pool = executor;
+        }
+        return pool == null ? new ArrayList<>() : pool.shutdownNow();
     }
 
-    static {
-        thread1.start();
-        thread2.start();
-        thread3.start();
+    public static boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        TaskExecutor pool;
+        synchronized (BackgroundThreads.class) {
+            pool = executor;
+        }
+        return pool == null || pool.awaitTermination(timeout, unit);
     }
 }
@@ -0,0 +1,221 @@
+/* license: https://mit-license.org
+ * ==============================================================================
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2026 Albert Moky
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * ==============================================================================
+ */
+package chat.dim.threading;
+
+import java.lang.reflect.Method;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+
+import chat.dim.log.Log;
+
+/**
+ *  Executor with two lanes
+ *  ~~~~~~~~~~~~~~~~~~~~~~~
+ *
+ *  rushing - urgent tasks, served by all threads;
+ *  waiting - trivial tasks, served by the trivial threads after the rushing lane is empty,
+ *            or by virtual threads (JDK 21+) if enabled.
+ *
+ *  Both lanes are FIFO blocking queues, so idle threads are woken up
+ *  as soon as a task arrived, and the old tasks will not be starved.
+ */
+public class TaskExecutor implements Executor {
+
+    private final TaskPool rushing;
+    private final TaskPool waiting;
+
+    private final List<TaskThread> threads = new ArrayList<>();
+    // virtual threads for waiting lane, null means using trivial threads
+    private final ExecutorService virtualThreads;
+
+    private volatile boolean shutdown = false;
+
+    /**
+     *  Create executor
+     *
+     * @param name           - prefix of thread names
+     * @param urgentThreads  - number of threads for rushing lane only
+     * @param trivialThreads - number of threads for both lanes
+     * @param virtual        - run waiting tasks in virtual threads if supported
+     */
+    public TaskExecutor(String name, int urgentThreads, int trivialThreads, boolean virtual) {
+        super();
+        assert urgentThreads > 0 : "rushing lane needs urgency threads: " + urgentThreads;
+        rushing = new TaskPool(name + "-rushing");
+        waiting = new TaskPool(name + "-waiting");
+        virtualThreads = virtual ? createVirtualExecutor() : null;
+        if (virtual && virtualThreads == null) {
+            Log.warning("virtual threads not supported, run waiting tasks in platform threads");
+        }
+        TaskPool pool2 = virtualThreads == null ? waiting : null;
+        assert pool2 == null || trivialThreads > 0 : "waiting lane needs trivial threads: " + trivialThreads;
+        for (int index = 0; index < urgentThreads; ++index) {
+            threads.add(new TaskThread.Urgency(name + "-urgency-" + index, rushing));
+        }
+        for (int index = 0; index < trivialThreads; ++index) {
+            threads.add(new TaskThread.Trivial(name + "-trivial-" + index, rushing, pool2));
+        }
+    }
+
+    private static ExecutorService createVirtualExecutor() {
+        try {
+            // JDK 21+
+            Method method = Executors.class.getMethod("newVirtualThreadPerTaskExecutor");
+            return (ExecutorService) method.invoke(null);
+        } catch (ReflectiveOperationException | RuntimeException e) {
+            return null;
+        }
+    }
+
+    public TaskPool getRushingPool() {
+        return rushing;
+    }
+
+    public TaskPool getWaitingPool() {
+        return waiting;
+    }
+
+    public boolean isVirtual() {
+        return virtualThreads != null;
+    }
+
+    public void start() {
+        for (TaskThread thread : threads) {
+            thread.start();
+        }
+    }
+
+    /**
+     *  Run task in rushing lane
+     */
+    public void rush(Runnable runnable) {
+        if (shutdown) {
+            throw new RejectedExecutionException("executor shut down, rushing task rejected");
+        }
+        rushing.addTask(runnable);
+    }
+
+    /**
+     *  Run task in waiting lane
+     */
+    @Override
+    public void execute(Runnable runnable) {
+        if (shutdown) {
+            throw new RejectedExecutionException("executor shut down, waiting task rejected");
+        } else if (virtualThreads != null) {
+            virtualThreads.execute(waiting.createTask(runnable));
+        } else {
+            waiting.addTask(runnable);
+        }
+    }
+
+    //
+    //  Shutdown
+    //
+
+    public boolean isShutdown() {
+        return shutdown;
+    }
+
+    public boolean isTerminated() {
+        if (!shutdown) {
+            return false;
+        }
+        for (TaskThread thread : threads) {
+            if (thread.isAlive()) {
+                return false;
+            }
+        }
+        return virtualThreads == null || virtualThreads.isTerminated();
+    }
+
+    /**
+     *  Stop accepting new tasks, the threads will exit after all queued tasks done
+     */
+    public void shutdown() {
+        shutdown = true;
+        for (TaskThread thread : threads) {
+            thread.stopping = true;
+        }
+        if (virtualThreads != null) {
+            virtualThreads.shutdown();
+        }
+    }
+
+    /**
+     *  Stop all threads immediately
+     *
+     * @return tasks never run
+     */
+    public List<Runnable> shutdownNow() {
+        shutdown();
+        List<Runnable> tasks = new ArrayList<>();
+        tasks.addAll(rushing.drainTasks());
+        tasks.addAll(waiting.drainTasks());
+        for (TaskThread thread : threads) {
+            thread.running = false;
+            thread.interrupt();
+        }
+        if (virtualThreads != null) {
+            tasks.addAll(virtualThreads.shutdownNow());
+        }
+        return tasks;
+    }
+
+    /**
+     *  Wait for all threads exit after shutdown
+     *
+     * @return false on timeout
+     */
+    public boolean awaitTermination(long timeout, TimeUnit unit) throws InterruptedException {
+        long expired = System.nanoTime() + unit.toNanos(timeout);
+        long remaining;
+        for (TaskThread thread : threads) {
+            remaining = expired - System.nanoTime();
+            if (remaining <= 0) {
+                break;
+            }
+            TimeUnit.NANOSECONDS.timedJoin(thread, remaining);
+        }
+        if (virtualThreads != null) {
+            remaining = Math.max(0, expired - System.nanoTime());
+            virtualThreads.awaitTermination(remaining, TimeUnit.NANOSECONDS);
+        }
+        return isTerminated();
+    }
+
+    @Override
+    public String toString() {
+        return "<" + getClass().getSimpleName() + " threads=" + threads.size() + " virtual=" + isVirtual()
+                + " shutdown=" + shutdown + ">\n\t" + rushing + "\n\t" + waiting + "\n</"
+                + getClass().getSimpleName() + ">";
+    }
+}
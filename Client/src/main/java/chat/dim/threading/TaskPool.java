@@ -2,7 +2,7 @@
  * ==============================================================================
  * The MIT License (MIT)
  *
- * Copyright (c) 2020 Albert Moky
+ * Copyright (c) 2026 Albert Moky
  *
  * Permission is hereby granted, free of charge, to any person obtaining a copy
  * of this software and associated documentation files (the "Software"), to deal
@@ -27,40 +27,166 @@ package chat.dim.threading;
 
 import java.util.ArrayList;
 import java.util.List;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.LinkedBlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
-class TaskPool {
+import chat.dim.log.Log;
 
-    private final List<Runnable> tasks = new ArrayList<>();
-    private final ReadWriteLock taskLock = new ReentrantReadWriteLock();
+/**
+ *  Task lane with FIFO blocking queue & metrics
+ */
+public class TaskPool {
 
-    void addTask(Runnable runnable) {
-        Lock writeLock = taskLock.writeLock();
-        writeLock.lock();
-        try {
-            tasks.add(runnable);
-        } finally {
-            writeLock.unlock();
+    private final String name;
+    private final BlockingQueue<Task> tasks = new LinkedBlockingQueue<>();
+
+    // metrics
+    private final AtomicInteger depth = new AtomicInteger(0);     // waiting tasks
+    private final AtomicInteger maxDepth = new AtomicInteger(0);
+    private final AtomicLong submitted = new AtomicLong(0);
+    private final AtomicLong completed = new AtomicLong(0);
+    private final AtomicLong failed = new AtomicLong(0);
+    private final AtomicLong totalLatency = new AtomicLong(0);   // nanoseconds waited before running
+    private final AtomicLong maxLatency = new AtomicLong(0);
+
+    TaskPool(String name) {
+        super();
+        this.name = name;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    /**
+     *  Wrap the runnable with metrics, the caller must run or queue it
+     */
+    Task createTask(Runnable runnable) {
+        submitted.incrementAndGet();
+        int count = depth.incrementAndGet();
+        int max = maxDepth.get();
+        while (count > max && !maxDepth.compareAndSet(max, count)) {
+            max = maxDepth.get();
         }
+        return new Task(runnable);
+    }
+
+    void addTask(Runnable runnable) {
+        tasks.offer(createTask(runnable));
     }
 
+    /**
+     *  Take the first task without waiting
+     *
+     * @return null on empty
+     */
     Runnable getTask() {
-        Runnable runnable;
-        Lock writeLock = taskLock.writeLock();
-        writeLock.lock();
-        try {
-            // NOTICE: take the last job
-            int index = tasks.size() - 1;
-            if (index < 0) {
-                runnable = null;
-            } else {
-                runnable = tasks.remove(index);
+        return tasks.poll();
+    }
+
+    /**
+     *  Take the first task, waiting if necessary
+     *
+     * @return null on timeout
+     */
+    Runnable getTask(long timeout, TimeUnit unit) throws InterruptedException {
+        return tasks.poll(timeout, unit);
+    }
+
+    /**
+     *  Remove all waiting tasks
+     */
+    List<Runnable> drainTasks() {
+        List<Task> array = new ArrayList<>();
+        tasks.drainTo(array);
+        depth.addAndGet(-array.size());
+        List<Runnable> runnableList = new ArrayList<>(array.size());
+        for (Task item : array) {
+            runnableList.add(item.runnable);
+        }
+        return runnableList;
+    }
+
+    //
+    //  Metrics
+    //
+
+    /**
+     *  Number of tasks waiting to run
+     */
+    public int getDepth() {
+        return depth.get();
+    }
+
+    public int getMaxDepth() {
+        return maxDepth.get();
+    }
+
+    public long getSubmittedCount() {
+        return submitted.get();
+    }
+
+    public long getCompletedCount() {
+        return completed.get();
+    }
+
+    public long getFailedCount() {
+        return failed.get();
+    }
+
+    /**
+     *  Average time (milliseconds) the tasks waited before running
+     */
+    public double getAverageLatency() {
+        long count = completed.get() + failed.get();
+        return count == 0 ? 0 : totalLatency.get() / 1000000.0 / count;
+    }
+
+    /**
+     *  Max time (milliseconds) a task waited before running
+     */
+    public double getMaxLatency() {
+        return maxLatency.get() / 1000000.0;
+    }
+
+    @Override
+    public String toString() {
+        return String.format("<%s depth=%d max_depth=%d submitted=%d completed=%d failed=%d" +
+                        " avg_latency=%.3fms max_latency=%.3fms />",
+                name, getDepth(), getMaxDepth(), getSubmittedCount(), getCompletedCount(), getFailedCount(),
+                getAverageLatency(), getMaxLatency());
+    }
+
+    final class Task implements Runnable {
+
+        final Runnable runnable;
+        private final long time = System.nanoTime();
+
+        Task(Runnable runnable) {
+            super();
+            this.runnable = runnable;
+        }
+
+        @Override
+        public void run() {
+            depth.decrementAndGet();
+            long latency = System.nanoTime() - time;
+            totalLatency.addAndGet(latency);
+            long max = maxLatency.get();
+            while (latency > max && !maxLatency.compareAndSet(max, latency)) {
+                max = maxLatency.get();
+            }
+            try {
+                runnable.run();
+                completed.incrementAndGet();
+            } catch (Exception e) {
+                failed.incrementAndGet();
+                Log.error("task error in " + name + ": " + e);
+                e.printStackTrace();
             }
-        } finally {
-            writeLock.unlock();
         }
-        return runnable;
     }
 }
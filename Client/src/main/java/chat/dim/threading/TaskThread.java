@@ -25,9 +25,20 @@
  */
 package chat.dim.threading;
 
+import java.util.concurrent.TimeUnit;
+
 abstract class TaskThread extends Thread {
 
-    boolean running = false;
+    // max time to wait for a task before checking the state again
+    static long IDLE_TIMEOUT = 100;  // milliseconds
+
+    volatile boolean running = false;
+    // stop after all tasks in the lanes done
+    volatile boolean stopping = false;
+
+    TaskThread(String name) {
+        super(name);
+    }
 
     @Override
     public void start() {
@@ -39,43 +50,39 @@ abstract class TaskThread extends Thread {
     public void run() {
         Runnable task;
         while (running) {
-            task = getTask();
-            if (task == null) {
-                // no more task, have a rest. ^_^
-                _sleep(101);
+            try {
+                task = getTask();
+            } catch (InterruptedException e) {
+                // interrupted by 'shutdownNow()'
                 continue;
             }
-            try {
+            if (task != null) {
                 task.run();
-            } catch (Exception e) {
-                e.printStackTrace();
+            } else if (stopping) {
+                // no more task, and the executor is shutting down
+                break;
             }
         }
+        running = false;
     }
 
-    protected abstract Runnable getTask();
-
-    @SuppressWarnings("SameParameterValue")
-    private static void _sleep(long millis) {
-        try {
-            Thread.sleep(millis);
-        } catch (InterruptedException e) {
-            e.printStackTrace();
-        }
-    }
+    /**
+     *  Get next task, blocking until one arrived or timeout
+     */
+    protected abstract Runnable getTask() throws InterruptedException;
 
     static class Urgency extends TaskThread {
 
         private final TaskPool pool1;
 
-        Urgency(TaskPool pool) {
-            super();
+        Urgency(String name, TaskPool pool) {
+            super(name);
             this.pool1 = pool;
         }
 
         @Override
-        protected Runnable getTask() {
-            return pool1.getTask();
+        protected Runnable getTask() throws InterruptedException {
+            return pool1.getTask(IDLE_TIMEOUT, TimeUnit.MILLISECONDS);
         }
     }
 
@@ -84,19 +91,26 @@ abstract class TaskThread extends Thread {
         private final TaskPool pool1;
         private final TaskPool pool2;
 
-        Trivial(TaskPool pool1, TaskPool pool2) {
-            super();
+        Trivial(String name, TaskPool pool1, TaskPool pool2) {
+            super(name);
             this.pool1 = pool1;
             this.pool2 = pool2;
         }
 
         @Override
-        protected Runnable getTask() {
+        protected Runnable getTask() throws InterruptedException {
+            if (pool2 == null) {
+                // waiting lane runs in virtual threads
+                return pool1.getTask(IDLE_TIMEOUT, TimeUnit.MILLISECONDS);
+            }
+            // help the urgency threads first
             Runnable task = pool1.getTask();
-            if (task == null) {
-                task = pool2.getTask();
+            if (task != null) {
+                return task;
             }
-            return task;
+            // the rushing tasks are served by the urgency threads without delay,
+            // so here just block on the waiting lane
+            return pool2.getTask(IDLE_TIMEOUT, TimeUnit.MILLISECONDS);
         }
     }
 }
@@ -33,15 +33,20 @@ package chat.dim;
 import java.lang.ref.WeakReference;
 import java.util.Date;
 import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
 
 import chat.dim.core.Archivist;
 import chat.dim.core.Barrack;
 import chat.dim.crypto.EncryptKey;
 import chat.dim.crypto.VerifyKey;
 import chat.dim.dbi.AccountDBI;
+import chat.dim.format.UTF8;
 import chat.dim.log.Log;
 import chat.dim.mem.MemoryCache;
-import chat.dim.mem.ThanosCache;
+import chat.dim.mem.SignatureCache;
+import chat.dim.mem.TinyLFUCache;
 import chat.dim.mkm.DocumentUtils;
 import chat.dim.mkm.Group;
 import chat.dim.mkm.MetaUtils;
@@ -68,17 +73,28 @@ public class CommonArchivist extends Barrack implements Archivist {
         return facebookRef.get();
     }
 
+    public static int USER_CACHE_SIZE = 8192;
+    public static int GROUP_CACHE_SIZE = 2048;
+
     // memory caches
     protected final MemoryCache<ID, User>   userCache = createUserCache();
     protected final MemoryCache<ID, Group> groupCache = createGroupCache();
 
+    // override to use other cache (e.g. ThanosCache)
     protected MemoryCache<ID, User> createUserCache() {
-        return new ThanosCache<>();
+        return new TinyLFUCache<>(USER_CACHE_SIZE);
     }
     protected MemoryCache<ID, Group> createGroupCache() {
-        return new ThanosCache<>();
+        return new TinyLFUCache<>(GROUP_CACHE_SIZE);
     }
 
+    // public keys resolved from users' meta & visa,
+    // removed when a new meta/document accepted
+    private final Map<ID, VerifyKey> metaKeys = new ConcurrentHashMap<>();
+    private final Map<ID, EncryptKey> visaKeys = new ConcurrentHashMap<>();
+    // increased when any key removed, to drop the key resolved before it
+    private final AtomicLong keysVersion = new AtomicLong(0);
+
     /**
      * Call it when received 'UIApplicationDidReceiveMemoryWarningNotification',
      * this will remove 50% of cached objects
@@ -88,9 +104,34 @@ public class CommonArchivist extends Barrack implements Archivist {
     public int reduceMemory() {
         int cnt1 = userCache.reduceMemory();
         int cnt2 = groupCache.reduceMemory();
+        clearKeys();
         return cnt1 + cnt2;
     }
 
+    private void clearKeys() {
+        keysVersion.incrementAndGet();
+        metaKeys.clear();
+        visaKeys.clear();
+    }
+
+    private void removeKeys(ID identifier) {
+        keysVersion.incrementAndGet();
+        metaKeys.remove(identifier);
+        visaKeys.remove(identifier);
+    }
+
+    private <K> void cacheKey(Map<ID, K> keys, ID identifier, K key, long version) {
+        if (keys.size() >= USER_CACHE_SIZE) {
+            // too many keys, start over
+            keys.clear();
+        }
+        keys.put(identifier, key);
+        if (keysVersion.get() != version) {
+            // changed while resolving, drop it
+            keys.remove(identifier, key);
+        }
+    }
+
     //
     //  Barrack
     //
@@ -148,7 +189,11 @@ public class CommonArchivist extends Barrack implements Archivist {
         //
         //  3. save into database
         //
-        return database.saveMeta(meta, identifier);
+        if (database.saveMeta(meta, identifier)) {
+            removeKeys(identifier);
+            return true;
+        }
+        return false;
     }
 
     protected boolean checkMeta(Meta meta, ID identifier) {
@@ -176,7 +221,11 @@ public class CommonArchivist extends Barrack implements Archivist {
         //
         //  3. save into database
         //
-        return database.saveDocument(doc);
+        if (database.saveDocument(doc)) {
+            removeKeys(doc.getIdentifier());
+            return true;
+        }
+        return false;
     }
 
     protected boolean checkDocumentValid(Document doc) {
@@ -212,7 +261,23 @@ public class CommonArchivist extends Barrack implements Archivist {
             Log.warning("failed to get meta: " + identifier);
             return false;
         }
-        return doc.verify(meta.getPublicKey());
+        VerifyKey key = meta.getPublicKey();
+        String data = doc.getString("data", null);
+        String signature = doc.getString("signature", null);
+        if (data == null || signature == null) {
+            return doc.verify(key);
+        }
+        // check verified signatures
+        SignatureCache cache = SignatureCache.getInstance();
+        byte[] binary = UTF8.encode(data);
+        byte[] sig = UTF8.encode(signature);
+        if (cache.isVerified(key, binary, sig)) {
+            return true;
+        } else if (doc.verify(key)) {
+            cache.setVerified(key, binary, sig);
+            return true;
+        }
+        return false;
     }
 
     protected boolean checkDocumentExpired(Document doc) {
@@ -231,11 +296,20 @@ public class CommonArchivist extends Barrack implements Archivist {
 
     @Override
     public VerifyKey getMetaKey(ID user) {
+        VerifyKey key = metaKeys.get(user);
+        if (key != null) {
+            return key;
+        }
+        long version = keysVersion.get();
         Facebook facebook = getFacebook();
         assert facebook != null : "facebook lost";
         Meta meta = facebook.getMeta(user);
         if (meta != null/* && meta.isValid()*/) {
-            return meta.getPublicKey();
+            key = meta.getPublicKey();
+            if (key != null) {
+                cacheKey(metaKeys, user, key, version);
+            }
+            return key;
         }
         //throw new NullPointerException("failed to get meta for ID: " + user);
         return null;
@@ -243,12 +317,21 @@ public class CommonArchivist extends Barrack implements Archivist {
 
     @Override
     public EncryptKey getVisaKey(ID user) {
+        EncryptKey key = visaKeys.get(user);
+        if (key != null) {
+            return key;
+        }
+        long version = keysVersion.get();
         Facebook facebook = getFacebook();
         assert facebook != null : "facebook lost";
         List<Document> documents = facebook.getDocuments(user);
         Visa doc = DocumentUtils.lastVisa(documents);
         if (doc != null/* && doc.isValid()*/) {
-            return doc.getPublicKey();
+            key = doc.getPublicKey();
+            if (key != null) {
+                cacheKey(visaKeys, user, key, version);
+            }
+            return key;
         }
         return null;
     }
@@ -34,6 +34,9 @@ import java.util.HashMap;
 import java.util.Map;
 
 import chat.dim.crypto.EncryptKey;
+import chat.dim.crypto.SymmetricKey;
+import chat.dim.digest.SHA256;
+import chat.dim.format.Base64;
 import chat.dim.log.Log;
 import chat.dim.msg.MessageUtils;
 import chat.dim.protocol.ID;
@@ -41,6 +44,7 @@ import chat.dim.protocol.InstantMessage;
 import chat.dim.protocol.ReliableMessage;
 import chat.dim.protocol.SecureMessage;
 import chat.dim.protocol.Visa;
+import chat.dim.type.Converter;
 
 public abstract class CommonMessagePacker extends MessagePacker {
 
@@ -142,7 +146,11 @@ public abstract class CommonMessagePacker extends MessagePacker {
             Log.warning("receiver not ready: " + iMsg.getReceiver());
             return null;
         }
-        return super.encryptMessage(iMsg);
+        SecureMessage sMsg = super.encryptMessage(iMsg);
+        if (sMsg != null && CommonMessenger.REUSE_KEY && CommonMessenger.isPersonalMessage(iMsg)) {
+            markReusedKey(iMsg, sMsg);
+        }
+        return sMsg;
     }
 
     @Override
@@ -166,30 +174,45 @@ public abstract class CommonMessagePacker extends MessagePacker {
         return super.signMessage(sMsg);
     }
 
-    /*/
-    @Override
-    public byte[] serializeMessage(ReliableMessage rMsg) {
-        SymmetricKey key = getMessenger().getDecryptKey(rMsg);
-        assert key != null : "encrypt key should not empty here";
-        String digest = getKeyDigest(key);
-        if (digest != null) {
-            boolean reused = key.getBoolean("reused", false);
-            if (reused) {
-                // replace key/keys with key digest
-                Map<String, Object> keys = new HashMap<>();
-                keys.put("digest", digest);
-                rMsg.put("keys", keys);
-                rMsg.remove("key");
-            } else {
-                // reuse it next time
-                key.put("reused", true);
-            }
+    private void markReusedKey(InstantMessage iMsg, SecureMessage sMsg) {
+        SymmetricKey password = getMessenger().getEncryptKey(iMsg);
+        String digest = getKeyDigest(password);
+        if (digest == null) {
+            // plain key?
+            return;
+        }
+        if (sMsg.get("key") != null || sMsg.get("keys") != null) {
+            // whole key sent, reuse it next time
+            password.put("reused", true);
+        } else if (password.getBoolean("reused", false)) {
+            // key not serialized, replace it with key digest
+            Map<String, Object> keys = new HashMap<>();
+            keys.put("digest", digest);
+            sMsg.put("keys", keys);
         }
-        return super.serializeMessage(rMsg);
     }
 
-    // get partially key data for digest
-    private static String getKeyDigest(SymmetricKey key) {
+    /**
+     *  Get key digest from message
+     *
+     * @param sMsg - message with "keys"
+     * @return null on key digest not found
+     */
+    public static String getKeyDigest(SecureMessage sMsg) {
+        Object keys = sMsg.get("keys");
+        if (keys instanceof Map) {
+            return Converter.getString(((Map<?, ?>) keys).get("digest"), null);
+        }
+        return null;
+    }
+
+    /**
+     *  Get partially key data for digest
+     *
+     * @param key - message key
+     * @return null for plain key
+     */
+    public static String getKeyDigest(SymmetricKey key) {
         if (key == null) {
             // key error
             return null;
@@ -214,6 +237,5 @@ public abstract class CommonMessagePacker extends MessagePacker {
         key.put("digest", value);
         return value;
     }
-    /*/
 
 }
@@ -30,7 +30,10 @@
  */
 package chat.dim;
 
+import java.util.Arrays;
 import java.util.Date;
+import java.util.List;
+import java.util.Map;
 
 import chat.dim.compat.Compatible;
 import chat.dim.compat.CompatibleCompressor;
@@ -40,7 +43,9 @@ import chat.dim.core.Compressor;
 import chat.dim.core.Packer;
 import chat.dim.core.Processor;
 import chat.dim.crypto.SymmetricKey;
+import chat.dim.crypto.VerifyKey;
 import chat.dim.log.Log;
+import chat.dim.mem.SignatureCache;
 import chat.dim.mkm.User;
 import chat.dim.protocol.Command;
 import chat.dim.protocol.Content;
@@ -58,6 +63,14 @@ import chat.dim.type.Pair;
  */
 public class CommonMessenger extends Messenger implements Transmitter {
 
+    /**
+     *  Reuse the message key for personal messages:
+     *      after the whole key was sent once, the following messages will
+     *      carry the key digest only, so the receiver can pick it up from
+     *      its local cipher key storage without asymmetric decryption.
+     */
+    public static boolean REUSE_KEY = false;
+
     protected final Session session;
     protected final CommonFacebook facebook;
     protected final CipherKeyDelegate database;
@@ -67,6 +80,12 @@ public class CommonMessenger extends Messenger implements Transmitter {
 
     private final Compressor compressor;
 
+    // message keys encrypted for group members by current thread
+    private final ThreadLocal<Pair<byte[], Map<ID, byte[]>>> encryptedKeys = new ThreadLocal<>();
+
+    // pre-encoded group message for split messages sent by current thread
+    private final ThreadLocal<MessageTemplate> messageTemplate = new ThreadLocal<>();
+
     public CommonMessenger(Session session, CommonFacebook facebook, CipherKeyDelegate database) {
         super();
         this.session = session;
@@ -114,11 +133,46 @@ public class CommonMessenger extends Messenger implements Transmitter {
 
     @Override
     public byte[] serializeMessage(ReliableMessage rMsg) {
+        MessageTemplate template = messageTemplate.get();
+        if (template != null && template.matches(rMsg)) {
+            // split from the group message, splice its own fields into the template
+            byte[] data = template.build(rMsg);
+            if (data != null) {
+                return data;
+            }
+        }
         Compatible.fixMetaAttachment(rMsg);
         Compatible.fixVisaAttachment(rMsg);
         return super.serializeMessage(rMsg);
     }
 
+    /**
+     *  Encode the shared body of a group message only once,
+     *  for the messages split from it which differ only in 'receiver' & 'key'
+     *
+     * @param rMsg - group message with 'keys'
+     * @return null on failed
+     */
+    public MessageTemplate createMessageTemplate(ReliableMessage rMsg) {
+        Compatible.fixMetaAttachment(rMsg);
+        Compatible.fixVisaAttachment(rMsg);
+        return MessageTemplate.create(rMsg, getCompressor());
+    }
+
+    /**
+     *  Set message template for split messages,
+     *  it will be used by 'serializeMessage()' when sending message in current thread
+     *
+     * @param template - pre-encoded group message; null to clear
+     */
+    public void setMessageTemplate(MessageTemplate template) {
+        if (template == null) {
+            messageTemplate.remove();
+        } else {
+            messageTemplate.set(template);
+        }
+    }
+
     @Override
     public ReliableMessage deserializeMessage(byte[] data) {
         if (data == null || data.length <= 8) {
@@ -138,8 +192,30 @@ public class CommonMessenger extends Messenger implements Transmitter {
 
     //-------- InstantMessageDelegate
 
+    /**
+     *  Set message keys encrypted in advance for group members,
+     *  they will be used by 'encryptKey()' when packing message in current thread
+     *
+     * @param data - serialized message key
+     * @param keys - member ID => encrypted key data; null to clear
+     */
+    public void setEncryptedKeys(byte[] data, Map<ID, byte[]> keys) {
+        if (data == null || keys == null) {
+            encryptedKeys.remove();
+        } else {
+            encryptedKeys.set(new Pair<>(data, keys));
+        }
+    }
+
     @Override
     public byte[] encryptKey(byte[] data, ID receiver, InstantMessage iMsg) {
+        Pair<byte[], Map<ID, byte[]>> prepared = encryptedKeys.get();
+        if (prepared != null && Arrays.equals(prepared.first, data)) {
+            byte[] encrypted = prepared.second.get(receiver);
+            if (encrypted != null) {
+                return encrypted;
+            }
+        }
         try {
             return super.encryptKey(data, receiver, iMsg);
         } catch (Exception e) {
@@ -151,12 +227,15 @@ public class CommonMessenger extends Messenger implements Transmitter {
 
     @Override
     public byte[] serializeKey(SymmetricKey password, InstantMessage iMsg) {
-        // TODO: reuse message key
-
         // 0. check message key
         Object reused = password.get("reused");
         Object digest = password.get("digest");
-        if (reused == null && digest == null) {
+        if (REUSE_KEY && digest != null && Converter.getBoolean(reused, false)
+                && isPersonalMessage(iMsg)) {
+            // the receiver has already got this key,
+            // no need to encrypt it again
+            return null;
+        } else if (reused == null && digest == null) {
             // flags not exist, serialize it directly
             return super.serializeKey(password, iMsg);
         }
@@ -175,12 +254,82 @@ public class CommonMessenger extends Messenger implements Transmitter {
         return data;
     }
 
+    @Override
+    public SymmetricKey deserializeKey(byte[] data, SecureMessage sMsg) {
+        if (data != null) {
+            return super.deserializeKey(data, sMsg);
+        }
+        // check key digest
+        String digest = CommonMessagePacker.getKeyDigest(sMsg);
+        if (digest == null) {
+            // no key digest, get the last key for this direction
+            return super.deserializeKey(null, sMsg);
+        }
+        // message key reused, get it from local storage
+        SymmetricKey password = getDecryptKey(sMsg);
+        if (password == null) {
+            Log.warning("reused key not found: " + sMsg.getSender() + " => " + sMsg.getReceiver());
+            return null;
+        } else if (!digest.equals(CommonMessagePacker.getKeyDigest(password))) {
+            Log.warning("reused key not match: " + sMsg.getSender() + " => " + sMsg.getReceiver()
+                    + ", digest: " + digest);
+            return null;
+        }
+        return password;
+    }
+
+    /**
+     *  Stop reusing the message key for this direction,
+     *  so the whole key will be sent with the next message
+     *
+     * @param sender   - message sender
+     * @param receiver - message receiver
+     */
+    public void resetReusedKey(ID sender, ID receiver) {
+        CipherKeyDelegate delegate = getCipherKeyDelegate();
+        SymmetricKey password = delegate.getCipherKey(sender, receiver, false);
+        if (password != null && password.remove("reused") != null) {
+            Log.info("message key reset: " + sender + " => " + receiver);
+        }
+    }
+
+    protected static boolean isPersonalMessage(InstantMessage iMsg) {
+        return iMsg.getGroup() == null && iMsg.getReceiver().isUser();
+    }
+
     @Override
     public byte[] serializeContent(Content content, SymmetricKey password, InstantMessage iMsg) {
         CompatibleOutgoing.fixContent(content);
         return super.serializeContent(content, password, iMsg);
     }
 
+    //-------- ReliableMessageDelegate
+
+    @Override
+    public boolean verifyDataSignature(byte[] data, byte[] signature, ReliableMessage rMsg) {
+        ID sender = rMsg.getSender();
+        List<VerifyKey> keys = facebook.getPublicKeysForVerification(sender);
+        if (keys == null || keys.isEmpty()) {
+            assert false : "failed to get verify keys: " + sender;
+            return false;
+        }
+        // 1. check verified signatures
+        SignatureCache cache = SignatureCache.getInstance();
+        for (VerifyKey key : keys) {
+            if (cache.isVerified(key, data, signature)) {
+                return true;
+            }
+        }
+        // 2. verify with each key
+        for (VerifyKey key : keys) {
+            if (key.verify(data, signature)) {
+                cache.setVerified(key, data, signature);
+                return true;
+            }
+        }
+        return false;
+    }
+
     //
     //  Interfaces for Transmitting Message
     //
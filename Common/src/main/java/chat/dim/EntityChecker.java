@@ -39,13 +39,10 @@ import chat.dim.dbi.AccountDBI;
 import chat.dim.log.Log;
 import chat.dim.mkm.MetaUtils;
 import chat.dim.protocol.Document;
-import chat.dim.protocol.GroupCommand;
 import chat.dim.protocol.ID;
 import chat.dim.protocol.Meta;
-import chat.dim.protocol.ReliableMessage;
 import chat.dim.protocol.Visa;
 import chat.dim.type.Duration;
-import chat.dim.type.Pair;
 import chat.dim.utils.FrequencyChecker;
 import chat.dim.utils.RecentTimeChecker;
 
@@ -72,6 +69,9 @@ public abstract class EntityChecker {
     // group => member
     private final Map<ID, ID> lastActiveMembers;
 
+    // group => history timeline
+    private final GroupHistoryIndex historyIndex;
+
     protected final AccountDBI database;
 
     public EntityChecker(AccountDBI db) {
@@ -87,6 +87,8 @@ public abstract class EntityChecker {
         membersQueries = new FrequencyChecker<>(QUERY_EXPIRES);
 
         documentResponses = new FrequencyChecker<>(RESPOND_EXPIRES);
+
+        historyIndex = new GroupHistoryIndex(db);
     }
 
     protected boolean isMetaQueryExpired(ID identifier) {
@@ -263,27 +265,14 @@ public abstract class EntityChecker {
     }
 
     public Date getLastGroupHistoryTime(ID group) {
-        List<Pair<GroupCommand, ReliableMessage>> array = database.getGroupHistories(group);
-        if (array == null || array.isEmpty()) {
-            return null;
-        }
-        Date lastTime = null;
-        GroupCommand his;
-        Date hisTime;
-        for (Pair<GroupCommand, ReliableMessage> pair : array) {
-            his = pair.first;
-            if (his == null) {
-                assert false : "group command error: " + pair;
-                continue;
-            }
-            hisTime = his.getTime();
-            if (hisTime == null) {
-                assert false : "group command error: " + his;
-            } else if (lastTime == null || lastTime.before(hisTime)) {
-                lastTime = hisTime;
-            }
-        }
-        return lastTime;
+        return historyIndex.getLastTime(group);
+    }
+
+    /**
+     *  Update it after group histories saved/cleared
+     */
+    public GroupHistoryIndex getGroupHistoryIndex() {
+        return historyIndex;
     }
 
     // -------- Querying
@@ -0,0 +1,212 @@
+/* license: https://mit-license.org
+ *
+ *  DIM-SDK : Decentralized Instant Messaging Software Development Kit
+ *
+ *                                Written in 2026 by Moky <albert.moky@gmail.com>
+ *
+ * ==============================================================================
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2026 Albert Moky
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * ==============================================================================
+ */
+package chat.dim;
+
+import java.util.Date;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+import chat.dim.dbi.GroupHistoryDBI;
+import chat.dim.protocol.GroupCommand;
+import chat.dim.protocol.ID;
+import chat.dim.protocol.ReliableMessage;
+import chat.dim.type.Pair;
+
+/**
+ *  Group History Index
+ *  ~~~~~~~~~~~~~~~~~~~
+ *
+ *  Keeps the latest time of each group command for groups,
+ *  built from the database at the first time, then updated in place
+ *  when group histories saved or cleared.
+ *
+ *  Only the latest times are kept, so a command appended twice
+ *  (e.g. loaded from the database just before 'append()') changes nothing.
+ */
+public class GroupHistoryIndex {
+
+    private final GroupHistoryDBI database;
+
+    private final Map<ID, Timeline> timelines = new ConcurrentHashMap<>();
+    // increased on each change, to drop the timeline built before it
+    private final AtomicLong version = new AtomicLong(0);
+
+    public GroupHistoryIndex(GroupHistoryDBI db) {
+        super();
+        database = db;
+    }
+
+    /**
+     *  Get time of the last group history
+     *
+     * @param group - group ID
+     * @return null on history not found
+     */
+    public Date getLastTime(ID group) {
+        return toDate(getTimeline(group).getLastTime(null));
+    }
+
+    /**
+     *  Get time of the last group command with name
+     *
+     * @param group - group ID
+     * @param cmd   - command name
+     * @return null on command not found
+     */
+    public Date getLastTime(ID group, String cmd) {
+        return toDate(getTimeline(group).getLastTime(cmd));
+    }
+
+    private static Date toDate(long time) {
+        return time == 0 ? null : new Date(time);
+    }
+
+    private Timeline getTimeline(ID group) {
+        Timeline timeline = timelines.get(group);
+        if (timeline != null) {
+            return timeline;
+        }
+        long ver = version.get();
+        timeline = new Timeline();
+        List<Pair<GroupCommand, ReliableMessage>> histories = database.getGroupHistories(group);
+        if (histories != null) {
+            for (Pair<GroupCommand, ReliableMessage> pair : histories) {
+                if (pair.first == null) {
+                    assert false : "group command error: " + pair;
+                    continue;
+                }
+                timeline.append(pair.first);
+            }
+        }
+        Timeline exists = timelines.putIfAbsent(group, timeline);
+        if (exists != null) {
+            return exists;
+        } else if (version.get() != ver) {
+            // changed while loading, load again next time
+            timelines.remove(group, timeline);
+        }
+        return timeline;
+    }
+
+    //
+    //  Updating
+    //
+
+    /**
+     *  Call after group history saved
+     */
+    public void append(ID group, GroupCommand content) {
+        version.incrementAndGet();
+        Timeline timeline = timelines.get(group);
+        if (timeline != null) {
+            timeline.append(content);
+        }
+    }
+
+    /**
+     *  Call after group histories for members cleared (all except 'resign')
+     */
+    public void clearMembers(ID group) {
+        version.incrementAndGet();
+        Timeline timeline = timelines.get(group);
+        if (timeline != null) {
+            timeline.clear(false);
+        }
+    }
+
+    /**
+     *  Call after group histories for administrators cleared ('resign')
+     */
+    public void clearAdmins(ID group) {
+        version.incrementAndGet();
+        Timeline timeline = timelines.get(group);
+        if (timeline != null) {
+            timeline.clear(true);
+        }
+    }
+
+    /**
+     *  Load from database again next time
+     */
+    public void remove(ID group) {
+        version.incrementAndGet();
+        timelines.remove(group);
+    }
+
+    /**
+     *  Latest time for each command of a group
+     */
+    private static final class Timeline {
+
+        private final Map<String, Long> commands = new HashMap<>();  // cmd => time
+        private long lastTime = 0;
+
+        synchronized void append(GroupCommand content) {
+            Date when = content.getTime();
+            long time = when == null ? 0 : when.getTime();
+            assert time > 0 : "group command error: " + content;
+            Long last = commands.get(content.getCmd());
+            if (last == null || last < time) {
+                commands.put(content.getCmd(), time);
+            }
+            if (lastTime < time) {
+                lastTime = time;
+            }
+        }
+
+        synchronized void clear(boolean admins) {
+            Iterator<Map.Entry<String, Long>> iterator = commands.entrySet().iterator();
+            long latest = 0;
+            Map.Entry<String, Long> entry;
+            while (iterator.hasNext()) {
+                entry = iterator.next();
+                if (GroupCommand.RESIGN.equals(entry.getKey()) == admins) {
+                    iterator.remove();
+                } else if (latest < entry.getValue()) {
+                    latest = entry.getValue();
+                }
+            }
+            lastTime = latest;
+        }
+
+        synchronized long getLastTime(String cmd) {
+            if (cmd == null) {
+                return lastTime;
+            }
+            Long time = commands.get(cmd);
+            return time == null ? 0 : time;
+        }
+    }
+}
@@ -0,0 +1,133 @@
+/* license: https://mit-license.org
+ *
+ *  DIMP : Decentralized Instant Messaging Protocol
+ *
+ *                                Written in 2026 by Moky <albert.moky@gmail.com>
+ *
+ * ==============================================================================
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2026 Albert Moky
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * ==============================================================================
+ */
+package chat.dim;
+
+import java.util.HashMap;
+import java.util.Map;
+
+import chat.dim.core.Compressor;
+import chat.dim.protocol.ReliableMessage;
+
+/**
+ *  Pre-encoded Message Template
+ *  ~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ *  The group message split for members are all the same except 'receiver' & 'key',
+ *  so the shared body is encoded only once, and the data package for each member
+ *  is built by splicing its own fields in front of the body:
+ *
+ *      '{"receiver":"...","key":"..."}' + '{"sender":"...",...}'
+ *          => '{"receiver":"...","key":"...","sender":"...",...}'
+ */
+public class MessageTemplate {
+
+    private final Compressor compressor;
+    private final Object signature;  // to identify the split messages
+    private final byte[] body;       // '{...}', without 'receiver', 'key' & 'keys'
+
+    protected MessageTemplate(Compressor compressor, Object signature, byte[] body) {
+        super();
+        this.compressor = compressor;
+        this.signature = signature;
+        this.body = body;
+    }
+
+    /**
+     *  Check whether the message is split from the template message
+     */
+    public boolean matches(ReliableMessage rMsg) {
+        return signature.equals(rMsg.get("signature")) && !rMsg.containsKey("keys");
+    }
+
+    /**
+     *  Build data package for the split message
+     *
+     * @param rMsg - message for one member
+     * @return null on failed
+     */
+    public byte[] build(ReliableMessage rMsg) {
+        Map<String, Object> fields = new HashMap<>();
+        fields.put("receiver", rMsg.getReceiver().toString());
+        Object key = rMsg.get("key");
+        if (key != null) {
+            fields.put("key", key);
+        }
+        byte[] head = compressor.compressReliableMessage(fields);
+        if (!isObject(head)) {
+            assert false : "message head error: " + fields;
+            return null;
+        }
+        return splice(head, body);
+    }
+
+    private static byte[] splice(byte[] head, byte[] body) {
+        if (body.length == 2) {
+            // empty body: '{}'
+            return head;
+        }
+        // head without '}', then ',', then body without '{'
+        int pos = head.length - 1;
+        byte[] data = new byte[pos + body.length];
+        System.arraycopy(head, 0, data, 0, pos);
+        data[pos] = ',';
+        System.arraycopy(body, 1, data, pos + 1, body.length - 1);
+        return data;
+    }
+
+    private static boolean isObject(byte[] json) {
+        return json != null && json.length >= 2 && json[0] == '{' && json[json.length - 1] == '}';
+    }
+
+    /**
+     *  Encode the shared body of the message
+     *
+     * @param rMsg       - group message (with 'keys')
+     * @param compressor - message compressor
+     * @return null when the message cannot be encoded as a template
+     */
+    public static MessageTemplate create(ReliableMessage rMsg, Compressor compressor) {
+        Object signature = rMsg.get("signature");
+        if (signature == null) {
+            assert false : "message not signed: " + rMsg.getSender() + " => " + rMsg.getReceiver();
+            return null;
+        }
+        Map<String, Object> info = new HashMap<>(rMsg.toMap());
+        info.remove("receiver");
+        info.remove("key");
+        info.remove("keys");
+        byte[] body = compressor.compressReliableMessage(info);
+        if (!isObject(body)) {
+            // not a JsON object?
+            return null;
+        }
+        return new MessageTemplate(compressor, signature, body);
+    }
+
+}
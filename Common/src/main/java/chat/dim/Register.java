@@ -34,6 +34,7 @@ import java.util.ArrayList;
 import java.util.List;
 import java.util.Random;
 
+import chat.dim.core.Archivist;
 import chat.dim.crypto.AsymmetricAlgorithms;
 import chat.dim.crypto.EncryptKey;
 import chat.dim.crypto.PrivateKey;
@@ -44,6 +45,7 @@ import chat.dim.format.PortableNetworkFile;
 import chat.dim.mkm.BaseBulletin;
 import chat.dim.mkm.BaseVisa;
 import chat.dim.protocol.Bulletin;
+import chat.dim.protocol.Document;
 import chat.dim.protocol.EntityType;
 import chat.dim.protocol.ID;
 import chat.dim.protocol.Meta;
@@ -53,10 +55,20 @@ import chat.dim.protocol.Visa;
 public class Register {
 
     private final AccountDBI database;
+    private final Archivist archivist;
 
     public Register(AccountDBI adb) {
+        this(adb, null);
+    }
+
+    /**
+     *  Create register with archivist, so the cached keys of the new account
+     *  can be refreshed when saving meta & document
+     */
+    public Register(AccountDBI adb, Archivist barrack) {
         super();
         database = adb;
+        archivist = barrack;
     }
 
     /**
@@ -90,8 +102,8 @@ public class Register {
         //
         database.savePrivateKey(idKey, PrivateKeyDBI.META, identifier);
         database.savePrivateKey(msgKey, PrivateKeyDBI.VISA, identifier);
-        database.saveMeta(meta, identifier);
-        database.saveDocument(visa);
+        saveMeta(meta, identifier);
+        saveDocument(visa);
         // OK
         return identifier;
     }
@@ -129,8 +141,8 @@ public class Register {
         //
         //  Step 5: save meta & bulletin in local storage
         //
-        database.saveMeta(meta, identifier);
-        database.saveDocument(doc);
+        saveMeta(meta, identifier);
+        saveDocument(doc);
         //
         //  Step 6: add founder as first member
         //
@@ -141,6 +153,20 @@ public class Register {
         return identifier;
     }
 
+    protected boolean saveMeta(Meta meta, ID identifier) {
+        if (archivist == null) {
+            return database.saveMeta(meta, identifier);
+        }
+        return archivist.saveMeta(meta, identifier);
+    }
+
+    protected boolean saveDocument(Document doc) {
+        if (archivist == null) {
+            return database.saveDocument(doc);
+        }
+        return archivist.saveDocument(doc);
+    }
+
     protected Visa createVisa(ID identifier, EncryptKey visaKey, SignKey idKey,
                               String nickname, PortableNetworkFile avatar) {
         assert identifier.isUser() : "user ID error: " + identifier;
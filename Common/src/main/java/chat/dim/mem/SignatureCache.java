@@ -0,0 +1,167 @@
+/* license: https://mit-license.org
+ *
+ *  DIMP : Decentralized Instant Messaging Protocol
+ *
+ *                                Written in 2026 by Moky <albert.moky@gmail.com>
+ *
+ * ==============================================================================
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2026 Albert Moky
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * ==============================================================================
+ */
+package chat.dim.mem;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+
+import chat.dim.crypto.VerifyKey;
+
+/**
+ *  Verified Signatures Cache
+ *  ~~~~~~~~~~~~~~~~~~~~~~~~~
+ *
+ *  Remembers the (key, data, signature) tuples which have been verified,
+ *  so the same signed message (forwarded, retransmitted, or split for
+ *  group members) and the same signed document will not be verified again.
+ *
+ *  Records are indexed by SHA-256(key.data + data + signature), only the
+ *  successes are cached; it is bounded by a W-TinyLFU cache, so a group
+ *  message verified for many members stays in the cache, while the ones
+ *  seen only once will be evicted from the small window first.
+ */
+public final class SignatureCache {
+
+    public static int MAX_SIGNATURES = 1024 * 16;
+
+    private static SignatureCache shared = null;
+
+    public static synchronized SignatureCache getInstance() {
+        if (shared == null) {
+            shared = new SignatureCache(MAX_SIGNATURES);
+        }
+        return shared;
+    }
+
+    private final TinyLFUCache<ByteBuffer, Boolean> cache;
+
+    public SignatureCache(int maxSize) {
+        super();
+        cache = new TinyLFUCache<>(maxSize);
+    }
+
+    /**
+     *  Check whether this signature was verified with the key before
+     *
+     * @param key       - verify key
+     * @param data      - signed data
+     * @param signature - signature of data
+     * @return false on not cached
+     */
+    public boolean isVerified(VerifyKey key, byte[] data, byte[] signature) {
+        return cache.get(digest(key, data, signature)) != null;
+    }
+
+    /**
+     *  Remember the signature verified with the key
+     *
+     * @param key       - verify key
+     * @param data      - signed data
+     * @param signature - signature of data
+     */
+    public void setVerified(VerifyKey key, byte[] data, byte[] signature) {
+        cache.put(digest(key, data, signature), Boolean.TRUE);
+    }
+
+    /**
+     *  Verify data & signature with key, check cache first
+     *
+     * @param key       - verify key
+     * @param data      - signed data
+     * @param signature - signature of data
+     * @return true on signature matched
+     */
+    public boolean verify(VerifyKey key, byte[] data, byte[] signature) {
+        ByteBuffer index = digest(key, data, signature);
+        if (cache.get(index) != null) {
+            // verified before
+            return true;
+        } else if (key.verify(data, signature)) {
+            cache.put(index, Boolean.TRUE);
+            return true;
+        }
+        return false;
+    }
+
+    private static ByteBuffer digest(VerifyKey key, byte[] data, byte[] signature) {
+        MessageDigest sha256;
+        try {
+            sha256 = MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException(e);
+        }
+        byte[] keyData = key.getData();
+        if (keyData != null) {
+            sha256.update(keyData);
+        }
+        // separate fields with their lengths
+        sha256.update(ByteBuffer.allocate(8).putInt(data.length).putInt(signature.length).array());
+        sha256.update(data);
+        sha256.update(signature);
+        return ByteBuffer.wrap(sha256.digest());
+    }
+
+    //
+    //  Statistics
+    //
+
+    public int size() {
+        return cache.size();
+    }
+
+    public long getHitCount() {
+        return cache.getHitCount();
+    }
+
+    public long getMissCount() {
+        return cache.getMissCount();
+    }
+
+    public long getEvictionCount() {
+        return cache.getEvictionCount();
+    }
+
+    public double getHitRate() {
+        return cache.getHitRate();
+    }
+
+    public int reduceMemory() {
+        return cache.reduceMemory();
+    }
+
+    @Override
+    public String toString() {
+        return "<" + getClass().getSimpleName() + " size=" + size() + " capacity=" + cache.getCapacity()
+                + " hits=" + getHitCount() + " misses=" + getMissCount()
+                + " evictions=" + getEvictionCount() + " />";
+    }
+}
@@ -0,0 +1,368 @@
+/* license: https://mit-license.org
+ *
+ *  DIMP : Decentralized Instant Messaging Protocol
+ *
+ *                                Written in 2026 by Moky <albert.moky@gmail.com>
+ *
+ * ==============================================================================
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2026 Albert Moky
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * ==============================================================================
+ */
+package chat.dim.mem;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ *  Bounded Memory Cache (W-TinyLFU)
+ *  ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ *
+ *  New entries go into a small LRU window first;
+ *  when the window is full, its oldest entry competes with the oldest one
+ *  in the main LRU space, and the one used more often (estimated by
+ *  a count-min sketch) survives.
+ *
+ *  Reads are lock-free; the access frequency is always recorded (the
+ *  sketch is updated with atomic operations), while the access order is
+ *  updated only when the lock is free, so a busy cache may skip some
+ *  reordering (not the lookup, nor the counting).
+ */
+public class TinyLFUCache<K, V> implements MemoryCache<K, V> {
+
+    private final int capacity;
+    private final int windowCapacity;
+
+    private final Map<K, Node<K, V>> table;
+
+    // guarded by lock
+    private final ReentrantLock lock = new ReentrantLock();
+    private final Node<K, V> window = new Node<>(null, null);  // LRU list of window space
+    private final Node<K, V> main = new Node<>(null, null);    // LRU list of main space
+    private int windowSize = 0;
+    private int mainSize = 0;
+
+    // thread-safe
+    private final FrequencySketch sketch;
+
+    // statistics
+    private final AtomicLong hitCount = new AtomicLong(0);
+    private final AtomicLong missCount = new AtomicLong(0);
+    private final AtomicLong evictionCount = new AtomicLong(0);
+
+    public TinyLFUCache(int maxSize) {
+        super();
+        assert maxSize > 0 : "cache size error: " + maxSize;
+        capacity = maxSize;
+        windowCapacity = Math.max(1, maxSize / 100);
+        table = new ConcurrentHashMap<>(Math.min(maxSize, 1024));
+        sketch = new FrequencySketch(maxSize);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    public int size() {
+        return table.size();
+    }
+
+    @Override
+    public V get(K key) {
+        Node<K, V> node = table.get(key);
+        if (node == null) {
+            missCount.incrementAndGet();
+            return null;
+        }
+        hitCount.incrementAndGet();
+        sketch.increment(key);
+        if (lock.tryLock()) {
+            try {
+                if (node.prev != null) {
+                    // still cached, move to the tail
+                    unlink(node);
+                    append(node.inWindow ? window : main, node);
+                }
+            } finally {
+                lock.unlock();
+            }
+        }
+        return node.value;
+    }
+
+    @Override
+    public V put(K key, V value) {
+        lock.lock();
+        try {
+            sketch.increment(key);
+            Node<K, V> node = table.get(key);
+            if (node != null) {
+                // replace value
+                V old = node.value;
+                node.value = value;
+                unlink(node);
+                append(node.inWindow ? window : main, node);
+                return old;
+            }
+            node = new Node<>(key, value);
+            node.inWindow = true;
+            table.put(key, node);
+            append(window, node);
+            ++windowSize;
+            evict();
+            return null;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    public V remove(K key) {
+        lock.lock();
+        try {
+            Node<K, V> node = table.remove(key);
+            if (node == null) {
+                return null;
+            }
+            detach(node);
+            return node.value;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    // lock needed
+    private void evict() {
+        while (windowSize > windowCapacity) {
+            // move the oldest one in window to main space
+            Node<K, V> candidate = window.next;
+            unlink(candidate);
+            --windowSize;
+            candidate.inWindow = false;
+            append(main, candidate);
+            ++mainSize;
+            if (windowSize + mainSize <= capacity) {
+                continue;
+            }
+            // main space full, admit the candidate only when it's used more often than the victim
+            Node<K, V> victim = main.next;
+            if (victim != candidate && sketch.frequency(candidate.key) <= sketch.frequency(victim.key)) {
+                victim = candidate;
+            }
+            table.remove(victim.key);
+            unlink(victim);
+            --mainSize;
+            evictionCount.incrementAndGet();
+        }
+    }
+
+    // lock needed
+    private void detach(Node<K, V> node) {
+        unlink(node);
+        if (node.inWindow) {
+            --windowSize;
+        } else {
+            --mainSize;
+        }
+    }
+
+    private static <K, V> void unlink(Node<K, V> node) {
+        node.prev.next = node.next;
+        node.next.prev = node.prev;
+        node.prev = null;
+        node.next = null;
+    }
+
+    private static <K, V> void append(Node<K, V> head, Node<K, V> node) {
+        Node<K, V> tail = head.prev;
+        node.prev = tail;
+        node.next = head;
+        tail.next = node;
+        head.prev = node;
+    }
+
+    /**
+     *  Remove 50% of cached objects (oldest first)
+     *
+     * @return number of survivors
+     */
+    @Override
+    public int reduceMemory() {
+        lock.lock();
+        try {
+            int survivors = (windowSize + mainSize) >> 1;
+            Node<K, V> node;
+            while (windowSize + mainSize > survivors) {
+                node = mainSize > 0 ? main.next : window.next;
+                table.remove(node.key);
+                detach(node);
+                evictionCount.incrementAndGet();
+            }
+            return survivors;
+        } finally {
+            lock.unlock();
+        }
+    }
+
+    //
+    //  Statistics
+    //
+
+    public long getHitCount() {
+        return hitCount.get();
+    }
+
+    public long getMissCount() {
+        return missCount.get();
+    }
+
+    public long getEvictionCount() {
+        return evictionCount.get();
+    }
+
+    public double getHitRate() {
+        long hits = hitCount.get();
+        long total = hits + missCount.get();
+        return total == 0 ? 1.0 : (double) hits / total;
+    }
+
+    @Override
+    public String toString() {
+        return "<" + getClass().getSimpleName() + " size=" + size() + " capacity=" + capacity
+                + " hits=" + getHitCount() + " misses=" + getMissCount()
+                + " evictions=" + getEvictionCount() + " />";
+    }
+
+    private static final class Node<K, V> {
+
+        final K key;
+        volatile V value;
+
+        // guarded by lock
+        Node<K, V> prev;
+        Node<K, V> next;
+        boolean inWindow;
+
+        Node(K key, V value) {
+            this.key = key;
+            this.value = value;
+            if (key == null) {
+                // list head
+                prev = this;
+                next = this;
+            }
+        }
+    }
+
+    /**
+     *  Count-Min Sketch with 4-bit counters,
+     *  all counters are halved periodically to forget the old histories.
+     *
+     *  Counters are updated by CAS without the cache lock; an increment
+     *  racing with the halving may be lost, which is fine for an estimate.
+     */
+    private static final class FrequencySketch {
+
+        private static final long RESET_MASK = 0x7777777777777777L;
+        private static final long[] SEEDS = {
+                0xc3a5c85c97cb3127L, 0xb492b66fbe98f273L, 0x9ae16a3b2f90404fL, 0xcbf29ce484222325L,
+        };
+
+        private final AtomicLongArray table;  // 16 counters in each slot
+        private final int mask;
+        private final int sampleSize;
+        private final AtomicInteger additions = new AtomicInteger(0);
+
+        FrequencySketch(int maxSize) {
+            int slots = Integer.highestOneBit(Math.max(maxSize, 16) - 1) << 1;
+            table = new AtomicLongArray(slots);
+            mask = slots - 1;
+            sampleSize = 10 * maxSize;
+        }
+
+        int frequency(Object key) {
+            int hash = spread(key.hashCode());
+            int frequency = Integer.MAX_VALUE;
+            for (int i = 0; i < 4; ++i) {
+                int index = indexOf(hash, i);
+                int offset = offsetOf(hash, i);
+                int count = (int) ((table.get(index) >>> offset) & 0xF);
+                frequency = Math.min(frequency, count);
+            }
+            return frequency;
+        }
+
+        void increment(Object key) {
+            int hash = spread(key.hashCode());
+            boolean added = false;
+            for (int i = 0; i < 4; ++i) {
+                added |= incrementAt(indexOf(hash, i), offsetOf(hash, i));
+            }
+            if (added && additions.incrementAndGet() == sampleSize) {
+                // only the one reaching the sample size does the halving
+                reset();
+            }
+        }
+
+        private boolean incrementAt(int index, int offset) {
+            long value;
+            do {
+                value = table.get(index);
+                if (((value >>> offset) & 0xF) == 0xF) {
+                    // saturated
+                    return false;
+                }
+            } while (!table.compareAndSet(index, value, value + (1L << offset)));
+            return true;
+        }
+
+        private void reset() {
+            long value;
+            for (int i = 0; i < table.length(); ++i) {
+                do {
+                    value = table.get(i);
+                } while (!table.compareAndSet(i, value, (value >>> 1) & RESET_MASK));
+            }
+            additions.addAndGet(-(sampleSize >>> 1));
+        }
+
+        private int indexOf(int hash, int i) {
+            long h = (hash + SEEDS[i]) * SEEDS[i];
+            h += h >>> 32;
+            return (int) h & mask;
+        }
+
+        // counter i of 16 in the slot
+        private static int offsetOf(int hash, int i) {
+            return (((hash >>> (i << 3)) & 3) + (i << 2)) << 2;
+        }
+
+        private static int spread(int x) {
+            x = ((x >>> 16) ^ x) * 0x45d9f3b;
+            x = ((x >>> 16) ^ x) * 0x45d9f3b;
+            return (x >>> 16) ^ x;
+        }
+    }
+}
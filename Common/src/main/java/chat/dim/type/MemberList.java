@@ -0,0 +1,190 @@
+/* license: https://mit-license.org
+ *
+ *  DIMP : Decentralized Instant Messaging Protocol
+ *
+ *                                Written in 2026 by Moky <albert.moky@gmail.com>
+ *
+ * ==============================================================================
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2026 Albert Moky
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * ==============================================================================
+ */
+package chat.dim.type;
+
+import java.util.AbstractList;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.RandomAccess;
+import java.util.Set;
+
+import chat.dim.protocol.ID;
+
+/**
+ *  Immutable Member List
+ *  ~~~~~~~~~~~~~~~~~~~~~
+ *  Snapshot of group members (or administrators, assistants),
+ *  keeps the original order and indexes the IDs by hash,
+ *  so 'contains()' & 'indexOf()' cost O(1) even for large groups.
+ *
+ *  The snapshot is read-only, copy it before modifying:
+ *      List&lt;ID&gt; members = Copier.copyList(snapshot);
+ */
+public final class MemberList extends AbstractList<ID> implements RandomAccess {
+
+    private static final MemberList EMPTY = new MemberList(new ID[0], new HashMap<>());
+
+    private final ID[] array;
+    private final Map<ID, Integer> positions;  // ID => index
+
+    private MemberList(ID[] items, Map<ID, Integer> index) {
+        super();
+        array = items;
+        positions = index;
+    }
+
+    @Override
+    public ID get(int index) {
+        return array[index];
+    }
+
+    @Override
+    public int size() {
+        return array.length;
+    }
+
+    @Override
+    public boolean isEmpty() {
+        return array.length == 0;
+    }
+
+    @Override
+    public boolean contains(Object o) {
+        //noinspection SuspiciousMethodCalls
+        return o != null && positions.containsKey(o);
+    }
+
+    @Override
+    public int indexOf(Object o) {
+        //noinspection SuspiciousMethodCalls
+        Integer pos = o == null ? null : positions.get(o);
+        return pos == null ? -1 : pos;
+    }
+
+    @Override
+    public int lastIndexOf(Object o) {
+        // no duplicated items
+        return indexOf(o);
+    }
+
+    @Override
+    public boolean containsAll(Collection<?> c) {
+        for (Object o : c) {
+            if (!contains(o)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     *  Get read-only set view of the members
+     */
+    public Set<ID> toSet() {
+        return Collections.unmodifiableSet(positions.keySet());
+    }
+
+    /**
+     *  Get first member (the owner of group members)
+     */
+    public ID getFirst() {
+        return array.length == 0 ? null : array[0];
+    }
+
+    //
+    //  Factories
+    //
+
+    public static MemberList empty() {
+        return EMPTY;
+    }
+
+    /**
+     *  Create snapshot for member list, duplicated items will be ignored
+     *
+     * @param members - ID list
+     * @return same object if it's a snapshot already
+     */
+    public static MemberList from(Collection<ID> members) {
+        if (members == null) {
+            return null;
+        } else if (members instanceof MemberList) {
+            return (MemberList) members;
+        }
+        return build(null, members);
+    }
+
+    /**
+     *  Create snapshot for group members, keep the owner at the first place
+     *
+     * @param owner   - group owner
+     * @param members - member list
+     * @return same object if the owner is the first member of a snapshot already
+     */
+    public static MemberList from(ID owner, Collection<ID> members) {
+        assert owner != null : "group owner should not be empty";
+        if (members instanceof MemberList) {
+            MemberList snapshot = (MemberList) members;
+            if (owner.equals(snapshot.getFirst())) {
+                return snapshot;
+            }
+        }
+        return build(owner, members);
+    }
+
+    private static MemberList build(ID first, Collection<ID> members) {
+        int capacity = members == null ? 1 : members.size() + 1;
+        List<ID> items = new ArrayList<>(capacity);
+        Map<ID, Integer> index = new HashMap<>(capacity * 4 / 3 + 1);
+        if (first != null) {
+            index.put(first, 0);
+            items.add(first);
+        }
+        if (members != null) {
+            for (ID item : members) {
+                if (item == null || index.containsKey(item)) {
+                    continue;
+                }
+                index.put(item, items.size());
+                items.add(item);
+            }
+        }
+        if (items.isEmpty()) {
+            return EMPTY;
+        }
+        return new MemberList(items.toArray(new ID[0]), index);
+    }
+
+}
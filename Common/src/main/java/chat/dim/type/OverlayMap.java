@@ -0,0 +1,175 @@
+/* license: https://mit-license.org
+ *
+ *  DIMP : Decentralized Instant Messaging Protocol
+ *
+ *                                Written in 2026 by Moky <albert.moky@gmail.com>
+ *
+ * ==============================================================================
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2026 Albert Moky
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * ==============================================================================
+ */
+package chat.dim.type;
+
+import java.util.AbstractMap;
+import java.util.AbstractSet;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+
+/**
+ *  Overlay Map
+ *  ~~~~~~~~~~~
+ *  Lightweight view of a shared map, which is treated as read-only;
+ *  all modifications are kept in a small overlay owned by this view,
+ *  so many views can share one body and only pay for their own delta.
+ *
+ *  Notice: the base map MUST NOT be changed while the views are alive.
+ */
+public class OverlayMap extends AbstractMap<String, Object> {
+
+    private final Map<String, Object> base;
+    private final Map<String, Object> overlay = new HashMap<>(4);
+    private final Set<String> removed = new HashSet<>(2);
+
+    public OverlayMap(Map<String, Object> body) {
+        super();
+        base = body;
+    }
+
+    @Override
+    public Object get(Object key) {
+        //noinspection SuspiciousMethodCalls
+        Object value = overlay.get(key);
+        if (value != null) {
+            return value;
+        } else if (removed.contains(key)) {
+            return null;
+        }
+        return base.get(key);
+    }
+
+    @Override
+    public boolean containsKey(Object key) {
+        //noinspection SuspiciousMethodCalls
+        if (overlay.containsKey(key)) {
+            return true;
+        } else if (removed.contains(key)) {
+            return false;
+        }
+        return base.containsKey(key);
+    }
+
+    @Override
+    public Object put(String key, Object value) {
+        Object old = get(key);
+        overlay.put(key, value);
+        if (base.containsKey(key)) {
+            removed.add(key);
+        }
+        return old;
+    }
+
+    @Override
+    public Object remove(Object key) {
+        Object old = get(key);
+        //noinspection SuspiciousMethodCalls
+        overlay.remove(key);
+        //noinspection SuspiciousMethodCalls
+        if (base.containsKey(key)) {
+            removed.add((String) key);
+        }
+        return old;
+    }
+
+    @Override
+    public void clear() {
+        overlay.clear();
+        removed.addAll(base.keySet());
+    }
+
+    @Override
+    public int size() {
+        // keys in 'removed' are all in base, overlay keys replacing base ones are in 'removed' too
+        return base.size() - removed.size() + overlay.size();
+    }
+
+    @Override
+    public Set<Entry<String, Object>> entrySet() {
+        return new AbstractSet<Entry<String, Object>>() {
+            @Override
+            public Iterator<Entry<String, Object>> iterator() {
+                return new EntryIterator();
+            }
+
+            @Override
+            public int size() {
+                return OverlayMap.this.size();
+            }
+        };
+    }
+
+    /**
+     *  Iterate entries of base map (skipping replaced/removed ones),
+     *  then entries of overlay
+     */
+    private class EntryIterator implements Iterator<Entry<String, Object>> {
+
+        private final Iterator<Entry<String, Object>> baseIterator = base.entrySet().iterator();
+        private final Iterator<Entry<String, Object>> overlayIterator = overlay.entrySet().iterator();
+        private Entry<String, Object> next = null;
+
+        @Override
+        public boolean hasNext() {
+            if (next != null) {
+                return true;
+            }
+            Entry<String, Object> entry;
+            while (baseIterator.hasNext()) {
+                entry = baseIterator.next();
+                if (!removed.contains(entry.getKey())) {
+                    next = new SimpleImmutableEntry<>(entry);
+                    return true;
+                }
+            }
+            if (overlayIterator.hasNext()) {
+                next = new SimpleImmutableEntry<>(overlayIterator.next());
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public Entry<String, Object> next() {
+            if (!hasNext()) {
+                throw new NoSuchElementException();
+            }
+            Entry<String, Object> entry = next;
+            next = null;
+            return entry;
+        }
+    }
+
+}
@@ -31,62 +31,125 @@
 package chat.dim.utils;
 
 import java.util.Date;
-import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
 import chat.dim.type.Duration;
 
 /**
  *  Frequency checker for duplicated queries
+ *
+ *  Records are kept in a concurrent map and updated by compare-and-set,
+ *  expired records are swept a few at a time by the callers.
  */
 public class FrequencyChecker <K> {
 
-    private final Duration expires;
-    private final Map<K, Date> records = new HashMap<>();
-    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // max records to check in each sweeping step
+    public static int SWEEP_STEP = 64;
+
+    private final long expires;  // milliseconds
+    // key => expired time (milliseconds)
+    private final ConcurrentMap<K, AtomicLong> records = new ConcurrentHashMap<>();
+
+    private final ReentrantLock sweepLock = new ReentrantLock();
+    private volatile Iterator<Map.Entry<K, AtomicLong>> sweeper = null;  // written with sweepLock
+    private volatile long nextSweep = 0;
 
     public FrequencyChecker(Duration lifeSpan) {
         super();
-        expires = lifeSpan;
+        // milliseconds of the duration
+        expires = lifeSpan.addTo(new Date(0)).getTime();
+    }
+
+    public int size() {
+        return records.size();
     }
 
-    private boolean checkExpired(K key, Date now) {
-        Date expired = records.get(key);
-        if (expired != null && expired.after(now)) {
-            // record exists and not expired yet
-            return false;
+    private boolean checkExpired(K key, long now) {
+        long expired = now + expires;
+        AtomicLong record = records.get(key);
+        while (true) {
+            if (record == null) {
+                record = records.putIfAbsent(key, new AtomicLong(expired));
+                if (record == null) {
+                    // new record
+                    return true;
+                }
+            }
+            long last = record.get();
+            if (last > now) {
+                // record exists and not expired yet
+                return false;
+            } else if (record.compareAndSet(last, expired)) {
+                return true;
+            }
+            // updated by another thread, check again
         }
-        records.put(key, expires.addTo(now));
-        return true;
     }
 
-    private boolean forceExpired(K key, Date now) {
-        records.put(key, expires.addTo(now));
+    private boolean forceExpired(K key, long now) {
+        long expired = now + expires;
+        AtomicLong record = records.putIfAbsent(key, new AtomicLong(expired));
+        if (record != null) {
+            record.set(expired);
+        }
         return true;
     }
+
     public boolean isExpired(K key, Date now, boolean force) {
+        long current = now == null ? System.currentTimeMillis() : now.getTime();
         boolean expired;
-        Lock writeLock = lock.writeLock();
-        writeLock.lock();
+        // if force == true:
+        //     ignore last updated time, force to update now
+        // else:
+        //     check last update time
+        if (force) {
+            expired = forceExpired(key, current);
+        } else {
+            expired = checkExpired(key, current);
+        }
+        sweep(current);
+        return expired;
+    }
+
+    /**
+     *  Remove a few expired records,
+     *  one round for all records in each period of 'expires'
+     */
+    private void sweep(long now) {
+        if (sweeper == null && now < nextSweep) {
+            // not time yet
+            return;
+        } else if (!sweepLock.tryLock()) {
+            // another thread is sweeping
+            return;
+        }
         try {
-            if (now == null) {
-                now = new Date();
+            Iterator<Map.Entry<K, AtomicLong>> iterator = sweeper;
+            if (iterator == null) {
+                if (now < nextSweep) {
+                    return;
+                }
+                // start a new round
+                iterator = records.entrySet().iterator();
+                nextSweep = now + expires;
             }
-            // if force == true:
-            //     ignore last updated time, force to update now
-            // else:
-            //     check last update time
-            if (force) {
-                expired = forceExpired(key, now);
-            } else {
-                expired = checkExpired(key, now);
+            Map.Entry<K, AtomicLong> entry;
+            AtomicLong record;
+            for (int i = 0; i < SWEEP_STEP && iterator.hasNext(); ++i) {
+                entry = iterator.next();
+                record = entry.getValue();
+                if (record.get() <= now) {
+                    records.remove(entry.getKey(), record);
+                }
             }
+            sweeper = iterator.hasNext() ? iterator : null;
         } finally {
-            writeLock.unlock();
+            sweepLock.unlock();
         }
-        return expired;
     }
 }
@@ -31,16 +31,36 @@
 package chat.dim.utils;
 
 import java.util.Date;
-import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.locks.ReentrantLock;
 
+/**
+ *  Recent time checker
+ *
+ *  Keeps the last time for each key (updated by compare-and-set),
+ *  records not updated for a long time will be swept by the callers.
+ */
 public class RecentTimeChecker <K> {
 
-    private final Map<K, Date> times = new HashMap<>();
-    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    // records not updated in 1 hour will be removed
+    public static long LIFESPAN = 3600 * 1000;  // milliseconds
+
+    // max records to check in each sweeping step
+    public static int SWEEP_STEP = 64;
+
+    private final ConcurrentMap<K, Record> times = new ConcurrentHashMap<>();
+
+    private final ReentrantLock sweepLock = new ReentrantLock();
+    private volatile Iterator<Map.Entry<K, Record>> sweeper = null;  // written with sweepLock
+    private volatile long nextSweep = 0;
+
+    public int size() {
+        return times.size();
+    }
 
     public boolean setLastTime(K key, Date now) {
         if (now == null) {
@@ -49,18 +69,26 @@ public class RecentTimeChecker <K> {
         }
         // TODO: calibration clock
 
+        long current = now.getTime();
+        long timestamp = System.currentTimeMillis();
         boolean changed = false;
-        Lock writeLock = lock.writeLock();
-        writeLock.lock();
-        try {
-            Date last = times.get(key);
-            if (last == null || last.before(now)) {
-                times.put(key, now);
-                changed = true;
+        Record record = times.get(key);
+        if (record == null) {
+            record = times.putIfAbsent(key, new Record(current, timestamp));
+            changed = record == null;
+        }
+        if (record != null) {
+            long last = record.time.get();
+            while (last < current) {
+                if (record.time.compareAndSet(last, current)) {
+                    changed = true;
+                    break;
+                }
+                last = record.time.get();
             }
-        } finally {
-            writeLock.unlock();
+            record.updated = timestamp;
         }
+        sweep(timestamp);
         return changed;
     }
 
@@ -69,8 +97,56 @@ public class RecentTimeChecker <K> {
             // assert false : "recent time empty: " + key;
             return true;
         }
-        Date last = times.get(key);
-        return last != null && last.after(now);
+        Record record = times.get(key);
+        return record != null && record.time.get() > now.getTime();
+    }
+
+    /**
+     *  Remove a few records not updated in lifespan,
+     *  one round for all records in each period of lifespan
+     */
+    private void sweep(long now) {
+        if (sweeper == null && now < nextSweep) {
+            // not time yet
+            return;
+        } else if (!sweepLock.tryLock()) {
+            // another thread is sweeping
+            return;
+        }
+        try {
+            Iterator<Map.Entry<K, Record>> iterator = sweeper;
+            if (iterator == null) {
+                if (now < nextSweep) {
+                    return;
+                }
+                // start a new round
+                iterator = times.entrySet().iterator();
+                nextSweep = now + LIFESPAN;
+            }
+            long expired = now - LIFESPAN;
+            Map.Entry<K, Record> entry;
+            Record record;
+            for (int i = 0; i < SWEEP_STEP && iterator.hasNext(); ++i) {
+                entry = iterator.next();
+                record = entry.getValue();
+                if (record.updated < expired) {
+                    times.remove(entry.getKey(), record);
+                }
+            }
+            sweeper = iterator.hasNext() ? iterator : null;
+        } finally {
+            sweepLock.unlock();
+        }
     }
 
+    private static final class Record {
+
+        final AtomicLong time;  // last time (milliseconds)
+        volatile long updated;  // when the last time set
+
+        Record(long time, long updated) {
+            this.time = new AtomicLong(time);
+            this.updated = updated;
+        }
+    }
 }
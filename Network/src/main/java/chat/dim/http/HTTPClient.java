@@ -34,14 +34,19 @@ import java.io.File;
 import java.io.IOError;
 import java.io.IOException;
 import java.net.URL;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Deque;
 import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
 import java.util.List;
 import java.util.Map;
 import java.util.Random;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
 
 import chat.dim.digest.MD5;
 import chat.dim.filesys.ExternalStorage;
@@ -53,23 +58,38 @@ import chat.dim.protocol.ID;
 import chat.dim.skywalker.Runner;
 import chat.dim.utils.Template;
 
+/**
+ *  HTTP Client
+ *  ~~~~~~~~~~~
+ *
+ *  Requests are dispatched by the runner thread to a pool of workers,
+ *  uploads first, with a limit of concurrent transfers for each host.
+ *  Requests downloading the same URL share one task.
+ */
 public abstract class HTTPClient extends Runner implements UploadDelegate, DownloadDelegate {
 
+    public static int MAX_WORKERS = 4;   // concurrent transfers
+    public static int MAX_PER_HOST = 2;  // concurrent transfers for each host
+
     // cache for uploaded file's URL
-    private final Map<String, URL> cdn = new HashMap<>();     // filename => URL
+    private final Map<String, URL> cdn = new ConcurrentHashMap<>();     // filename => URL
+
+    // requests waiting to upload/download, guarded by lock
+    private final Deque<UploadRequest> uploads = new ArrayDeque<>();
+    private final Deque<DownloadRequest> downloads = new ArrayDeque<>();
 
-    // requests waiting to upload/download
-    private final List<UploadRequest> uploads = new ArrayList<>();
-    private final List<DownloadRequest> downloads = new ArrayList<>();
+    // requests for the same URL & path (the first one is waiting/running), guarded by lock
+    private final Map<String, List<DownloadRequest>> downloadingRequests = new HashMap<>();
+    // running task => request, guarded by lock
+    private final Map<UploadTask, UploadRequest> uploadingRequests = new IdentityHashMap<>();
 
-    // tasks running
-    private UploadTask uploadingTask = null;
-    private UploadRequest uploadingRequest = null;
-    private DownloadTask downloadingTask = null;
-    private DownloadRequest downloadingRequest = null;
+    // host => running tasks, guarded by lock
+    private final Map<String, Integer> hostCounter = new HashMap<>();
+    private int running = 0;
 
-    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    private final Object lock = new Object();
     private Thread thread = null;
+    private ExecutorService workers = null;
 
     public HTTPClient() {
         super(Runner.INTERVAL_SLOW);
@@ -91,7 +111,7 @@ public abstract class HTTPClient extends Runner implements UploadDelegate, Downl
                       UploadDelegate delegate) throws IOException {
         // 1. check previous upload
         String filename = Paths.filename(path);
-        URL url = getURL(filename);  // filename in format: hex(md5(data)) + ext
+        URL url = cdn.get(filename);  // filename in format: hex(md5(data)) + ext
         if (url != null) {
             // already uploaded
             return url;
@@ -100,7 +120,10 @@ public abstract class HTTPClient extends Runner implements UploadDelegate, Downl
         int len = ExternalStorage.saveBinary(data, path);
         assert len == data.length : "failed to save binary: " + path;
         // 3. build request
-        addUploadRequest(new UploadRequest(api, path, secret, var, sender, delegate));
+        UploadRequest req = new UploadRequest(api, path, secret, var, sender, delegate);
+        synchronized (lock) {
+            uploads.addLast(req);
+        }
         return null;
     }
 
@@ -120,65 +143,21 @@ public abstract class HTTPClient extends Runner implements UploadDelegate, Downl
             return path;
         }
         // 2. build request
-        addDownloadRequest(new DownloadRequest(url, path, delegate));
-        return null;
-    }
-
-    private URL getURL(String filename) {
-        URL url;
-        Lock writeLock = lock.writeLock();
-        writeLock.lock();
-        try {
-            url = cdn.get(filename);
-        } finally {
-            writeLock.unlock();
-        }
-        return url;
-    }
-    private void addUploadRequest(UploadRequest req) {
-        Lock writeLock = lock.writeLock();
-        writeLock.lock();
-        try {
-            uploads.add(req);
-        } finally {
-            writeLock.unlock();
-        }
-    }
-    private void addDownloadRequest(DownloadRequest req) {
-        Lock writeLock = lock.writeLock();
-        writeLock.lock();
-        try {
-            downloads.add(req);
-        } finally {
-            writeLock.unlock();
-        }
-    }
-
-    private UploadRequest getUploadRequest() {
-        UploadRequest req = null;
-        Lock writeLock = lock.writeLock();
-        writeLock.lock();
-        try {
-            if (uploads.size() > 0) {
-                req = uploads.remove(0);
-            }
-        } finally {
-            writeLock.unlock();
-        }
-        return req;
-    }
-    private DownloadRequest getDownloadRequest() {
-        DownloadRequest req = null;
-        Lock writeLock = lock.writeLock();
-        writeLock.lock();
-        try {
-            if (downloads.size() > 0) {
-                req = downloads.remove(0);
+        DownloadRequest req = new DownloadRequest(url, path, delegate);
+        String key = downloadKey(url, path);
+        synchronized (lock) {
+            List<DownloadRequest> requests = downloadingRequests.get(key);
+            if (requests != null) {
+                // same URL to same path is waiting/running, share the task
+                requests.add(req);
+                return null;
             }
-        } finally {
-            writeLock.unlock();
+            requests = new ArrayList<>();
+            requests.add(req);
+            downloadingRequests.put(key, requests);
+            downloads.addLast(req);
         }
-        return req;
+        return null;
     }
 
     /**
@@ -186,6 +165,13 @@ public abstract class HTTPClient extends Runner implements UploadDelegate, Downl
      */
     public void start() {
         stop();
+        synchronized (lock) {
+            workers = Executors.newFixedThreadPool(MAX_WORKERS, runnable -> {
+                Thread thr = new Thread(runnable, "HTTPClient-worker");
+                thr.setDaemon(true);
+                return thr;
+            });
+        }
         Thread thr = new Thread(this);
         thr.setDaemon(true);
         thr.start();
@@ -206,16 +192,29 @@ public abstract class HTTPClient extends Runner implements UploadDelegate, Downl
                 e.printStackTrace();
             }
         }
+        // stop workers after the running tasks finished
+        ExecutorService pool;
+        synchronized (lock) {
+            pool = workers;
+            workers = null;
+        }
+        if (pool != null) {
+            pool.shutdown();
+        }
     }
 
     @Override
     public boolean process() {
         try {
             // drive upload tasks as priority
-            if (driveUpload() || driveDownload()) {
+            boolean busy = false;
+            while (driveUpload() || driveDownload()) {
+                busy = true;
+            }
+            if (busy) {
                 // it's busy
                 return true;
-            } else {
+            } else if (isIdle()) {
                 // nothing to do now, cleanup temporary files
                 cleanup();
             }
@@ -229,50 +228,98 @@ public abstract class HTTPClient extends Runner implements UploadDelegate, Downl
     // clean expired temporary files for upload/download
     protected abstract void cleanup();
 
-    private boolean driveUpload() throws IOException {
-        // 1. check running task
-        UploadTask task = uploadingTask;
-        if (task != null) {
-            TaskStatus status = task.getStatus();
-            switch (status) {
-                case Error:
-                    Log.error("task error: " + task);
-                    break;
-
-                case Running:
-                case Success:
-                    // task is busy now
-                    return true;
-
-                case Expired:
-                    Log.error("task expired: " + task);
-                    break;
-
-                case Finished:
-                    Log.info("task finished: " + task);
-                    break;
-
-                default:
-                    assert TaskStatus.Waiting.equals(status) : "unknown status: " + task;
-                    Log.warning("task status error: " + task);
-                    break;
+    private boolean isIdle() {
+        synchronized (lock) {
+            return running == 0 && uploads.isEmpty() && downloads.isEmpty();
+        }
+    }
+
+    // lock needed
+    private void acquire(String host) {
+        ++running;
+        hostCounter.merge(host, 1, Integer::sum);
+    }
+
+    private void release(String host) {
+        synchronized (lock) {
+            --running;
+            Integer count = hostCounter.get(host);
+            if (count == null || count <= 1) {
+                hostCounter.remove(host);
+            } else {
+                hostCounter.put(host, count - 1);
             }
-            // remove task
-            uploadingTask = null;
-            uploadingRequest = null;
         }
+    }
 
-        // 2. get next request
-        UploadRequest req = getUploadRequest();
-        if (req == null) {
-            // nothing to upload now
+    private boolean execute(String host, Runnable job) {
+        ExecutorService pool = workers;
+        if (pool == null) {
+            release(host);
+            return false;
+        }
+        try {
+            pool.execute(() -> {
+                try {
+                    job.run();
+                } finally {
+                    release(host);
+                }
+            });
+            return true;
+        } catch (RejectedExecutionException e) {
+            Log.error("failed to run task: " + e);
+            release(host);
             return false;
         }
+    }
+
+    // get the first request whose host is not busy
+    private static <T extends AbstractTask> T next(Deque<T> requests, Map<String, Integer> counter) {
+        Iterator<T> iterator = requests.iterator();
+        T req;
+        Integer count;
+        while (iterator.hasNext()) {
+            req = iterator.next();
+            count = counter.get(req.url.getHost());
+            if (count == null || count < MAX_PER_HOST) {
+                iterator.remove();
+                return req;
+            }
+        }
+        return null;
+    }
+
+    private boolean driveUpload() {
+        // 1. get next request
+        UploadRequest req;
+        synchronized (lock) {
+            if (running >= MAX_WORKERS) {
+                return false;
+            }
+            req = next(uploads, hostCounter);
+            if (req == null) {
+                // nothing to upload now
+                return false;
+            }
+            acquire(req.url.getHost());
+        }
+        // 2. run it in a worker
+        if (execute(req.url.getHost(), () -> runUpload(req))) {
+            return true;
+        }
+        synchronized (lock) {
+            // put it back
+            uploads.addFirst(req);
+        }
+        return false;
+    }
 
-        // 3. check previous upload
+    private void runUpload(UploadRequest req) {
+        // 1. check previous upload
         String path = req.path;
         String filename = Paths.filename(path);
-        URL url = getURL(filename);
+        URL url = cdn.get(filename);
         if (url != null) {
             // uploaded previously
             assert req.getStatus() == TaskStatus.Waiting : "request status error: " + req.getStatus();
@@ -282,29 +329,52 @@ public abstract class HTTPClient extends Runner implements UploadDelegate, Downl
                 delegate.onUploadSuccess(req, url);
             }
             req.onFinished();
-            return true;
+            return;
         }
 
+        // 2. build task
+        UploadTask task;
+        try {
+            task = buildUploadTask(req, filename);
+        } catch (IOException e) {
+            Log.error("failed to build upload task: " + req + ", " + e);
+            UploadDelegate delegate = req.getDelegate();
+            if (delegate != null) {
+                delegate.onUploadFailed(req, e);
+            }
+            return;
+        }
+
+        // 3. run it
+        synchronized (lock) {
+            uploadingRequests.put(task, req);
+        }
+        try {
+            task.run();
+        } catch (RuntimeException e) {
+            Log.error("failed to upload: " + task + ", error: " + e);
+            onUploadFailed(task, new IOException(e));
+        } finally {
+            synchronized (lock) {
+                uploadingRequests.remove(task);
+            }
+        }
+        Log.info("task finished: " + task + ", status: " + task.getStatus());
+    }
+    private UploadTask buildUploadTask(UploadRequest req, String filename) throws IOException {
         // hash: md5(data + secret + salt)
-        byte[] data = ExternalStorage.loadBinary(path);
+        byte[] data = ExternalStorage.loadBinary(req.path);
         byte[] secret = req.secret;
         byte[] salt = random_salt();
         byte[] hash = MD5.digest(concat(data, secret, salt));
 
-        // 4. build task
         String urlString = req.url.toString();
         // "https://sechat.dim.chat/{ID}/upload?md5={MD5}&salt={SALT}"
         Address address = req.sender.getAddress();
         urlString = Template.replace(urlString, "ID", address.toString());
         urlString = Template.replace(urlString, "MD5", Hex.encode(hash));
         urlString = Template.replace(urlString, "SALT", Hex.encode(salt));
-        task = new UploadTask(new URL(urlString), req.name, filename, data, this);
-
-        // 5. run it
-        uploadingRequest = req;
-        uploadingTask = task;
-        task.run();
-        return true;
+        return new UploadTask(new URL(urlString), req.name, filename, data, this);
     }
     private static byte[] concat(byte[] data, byte[] secret, byte[] salt) {
         byte[] buffer = new byte[data.length + secret.length + salt.length];
@@ -321,85 +391,98 @@ public abstract class HTTPClient extends Runner implements UploadDelegate, Downl
     }
 
     private boolean driveDownload() {
-        // 1. check running task
-        DownloadTask task = downloadingTask;
-        if (task != null) {
-            TaskStatus status = task.getStatus();
-            switch (status) {
-                case Error:
-                    Log.error("task error: " + task);
-                    break;
-
-                case Running:
-                case Success:
-                    // task is busy now
-                    return true;
-
-                case Expired:
-                    Log.error("task failed: " + task);
-                    break;
-
-                case Finished:
-                    Log.info("task finished: " + task);
-                    break;
-
-                default:
-                    assert TaskStatus.Waiting.equals(status) : "unknown status: " + task;
-                    Log.warning("task status error: " + task);
-                    break;
+        // 1. get next request
+        DownloadRequest req;
+        synchronized (lock) {
+            if (running >= MAX_WORKERS) {
+                return false;
+            }
+            req = next(downloads, hostCounter);
+            if (req == null) {
+                // nothing to download now
+                return false;
             }
-            // remove task
-            downloadingTask = null;
-            downloadingRequest = null;
+            acquire(req.url.getHost());
         }
-
-        // 2. get next request
-        DownloadRequest req = getDownloadRequest();
-        if (req == null) {
-            // nothing to download now
-            return false;
+        // 2. run it in a worker
+        if (execute(req.url.getHost(), () -> runDownload(req))) {
+            return true;
+        }
+        synchronized (lock) {
+            // put it back
+            downloads.addFirst(req);
         }
+        return false;
+    }
 
-        // 3. check previous download
+    private void runDownload(DownloadRequest req) {
+        // 1. check previous download
         String path = req.path;
         File file = new File(path);
         if (file.exists() && file.length() > 0) {
             // downloaded previously
             assert req.getStatus() == TaskStatus.Waiting : "request status error: " + req.getStatus();
             req.onSuccess();
-            DownloadDelegate delegate = req.getDelegate();
-            if (delegate != null) {
-                delegate.onDownloadSuccess(req, path);
+            for (DownloadRequest item : finishDownloading(req)) {
+                DownloadDelegate delegate = item.getDelegate();
+                if (delegate != null) {
+                    delegate.onDownloadSuccess(item, path);
+                }
             }
             req.onFinished();
-            return true;
+            return;
         }
 
-        // 4. build task
-        task = new DownloadTask(req.url, path, this);
+        // 2. build task
+        DownloadTask task = new DownloadTask(req.url, path, this);
 
-        // 5. run it
-        downloadingRequest = req;
-        downloadingTask = task;
-        task.run();
-        return true;
+        // 3. run it
+        try {
+            task.run();
+        } catch (RuntimeException e) {
+            Log.error("failed to download: " + task + ", error: " + e);
+            onDownloadFailed(task, new IOException(e));
+        }
+        Log.info("task finished: " + task + ", status: " + task.getStatus());
     }
 
-    //-------- UploadDelegate
+    // remove all requests for this URL & path
+    private List<DownloadRequest> finishDownloading(DownloadRequest request) {
+        List<DownloadRequest> requests;
+        synchronized (lock) {
+            requests = downloadingRequests.remove(downloadKey(request.url, request.path));
+        }
+        return requests == null ? new ArrayList<>() : requests;
+    }
 
-    @Override
-    public void onUploadSuccess(UploadRequest request, URL url) {
+    // requests with different paths must not share a task,
+    // as each delegate reads the file at its own path
+    private static String downloadKey(URL url, String path) {
+        return url + " -> " + path;
+    }
+
+    private UploadRequest getUploadingRequest(UploadRequest request) {
         assert request instanceof UploadTask : "should not happen: " + request;
         UploadTask task = (UploadTask) request;
-        UploadRequest req = uploadingRequest;
-        assert task == uploadingTask : "upload tasks not match: " + task + ", " + uploadingTask;
+        UploadRequest req;
+        synchronized (lock) {
+            req = uploadingRequests.get(task);
+        }
         assert req != null && req.path.endsWith(task.filename) : "upload error: " + task + ", " + req;
+        return req;
+    }
+
+    //-------- UploadDelegate
+
+    @Override
+    public void onUploadSuccess(UploadRequest request, URL url) {
+        UploadRequest req = getUploadingRequest(request);
         // 1. cache upload result
         if (url != null) {
-            cdn.put(task.filename, url);
+            cdn.put(((UploadTask) request).filename, url);
         }
         // 2. callback
-        UploadDelegate delegate = req.getDelegate();
+        UploadDelegate delegate = req == null ? null : req.getDelegate();
         if (delegate != null) {
             delegate.onUploadSuccess(req, url);
         }
@@ -407,13 +490,9 @@ public abstract class HTTPClient extends Runner implements UploadDelegate, Downl
 
     @Override
     public void onUploadFailed(UploadRequest request, IOException error) {
-        assert request instanceof UploadTask : "should not happen: " + request;
-        UploadTask task = (UploadTask) request;
-        UploadRequest req = uploadingRequest;
-        assert task == uploadingTask : "upload tasks not match: " + task + ", " + uploadingTask;
-        assert req != null && req.path.endsWith(task.filename) : "upload error: " + task + ", " + req;
+        UploadRequest req = getUploadingRequest(request);
         // callback
-        UploadDelegate delegate = req.getDelegate();
+        UploadDelegate delegate = req == null ? null : req.getDelegate();
         if (delegate != null) {
             delegate.onUploadFailed(req, error);
         }
@@ -421,13 +500,9 @@ public abstract class HTTPClient extends Runner implements UploadDelegate, Downl
 
     @Override
     public void onUploadError(UploadRequest request, IOError error) {
-        assert request instanceof UploadTask : "should not happen: " + request;
-        UploadTask task = (UploadTask) request;
-        UploadRequest req = uploadingRequest;
-        assert task == uploadingTask : "upload tasks not match: " + task + ", " + uploadingTask;
-        assert req != null && req.path.endsWith(task.filename) : "upload error: " + task + ", " + req;
+        UploadRequest req = getUploadingRequest(request);
         // callback
-        UploadDelegate delegate = req.getDelegate();
+        UploadDelegate delegate = req == null ? null : req.getDelegate();
         if (delegate != null) {
             delegate.onUploadError(req, error);
         }
@@ -438,42 +513,36 @@ public abstract class HTTPClient extends Runner implements UploadDelegate, Downl
     @Override
     public void onDownloadSuccess(DownloadRequest request, String path) {
         assert request instanceof DownloadTask : "should not happen: " + request;
-        DownloadTask task = (DownloadTask) request;
-        DownloadRequest req = downloadingRequest;
-        assert task == downloadingTask : "download tasks not match: " + task + ", " + downloadingTask;
-        assert req != null && req.url.equals(task.url) : "download error: " + task + ", " + req;
-        // callback
-        DownloadDelegate delegate = req.getDelegate();
-        if (delegate != null) {
-            delegate.onDownloadSuccess(req, path);
+        // callback for all requests with this URL & path
+        for (DownloadRequest req : finishDownloading(request)) {
+            DownloadDelegate delegate = req.getDelegate();
+            if (delegate != null) {
+                delegate.onDownloadSuccess(req, path);
+            }
         }
     }
 
     @Override
     public void onDownloadFailed(DownloadRequest request, IOException error) {
         assert request instanceof DownloadTask : "should not happen: " + request;
-        DownloadTask task = (DownloadTask) request;
-        DownloadRequest req = downloadingRequest;
-        assert task == downloadingTask : "download tasks not match: " + task + ", " + downloadingTask;
-        assert req != null && req.url.equals(task.url) : "download error: " + task + ", " + req;
-        // callback
-        DownloadDelegate delegate = req.getDelegate();
-        if (delegate != null) {
-            delegate.onDownloadFailed(req, error);
+        // callback for all requests with this URL & path
+        for (DownloadRequest req : finishDownloading(request)) {
+            DownloadDelegate delegate = req.getDelegate();
+            if (delegate != null) {
+                delegate.onDownloadFailed(req, error);
+            }
         }
     }
 
     @Override
     public void onDownloadError(DownloadRequest request, IOError error) {
         assert request instanceof DownloadTask : "should not happen: " + request;
-        DownloadTask task = (DownloadTask) request;
-        DownloadRequest req = downloadingRequest;
-        assert task == downloadingTask : "download tasks not match: " + task + ", " + downloadingTask;
-        assert req != null && req.url.equals(task.url) : "download error: " + task + ", " + req;
-        // callback
-        DownloadDelegate delegate = req.getDelegate();
-        if (delegate != null) {
-            delegate.onDownloadError(req, error);
+        // callback for all requests with this URL & path
+        for (DownloadRequest req : finishDownloading(request)) {
+            DownloadDelegate delegate = req.getDelegate();
+            if (delegate != null) {
+                delegate.onDownloadError(req, error);
+            }
         }
     }
 }
@@ -33,15 +33,22 @@ package chat.dim.network;
 import java.lang.ref.WeakReference;
 import java.net.SocketAddress;
 import java.nio.channels.SocketChannel;
+import java.util.Date;
+import java.util.Map;
 
 import chat.dim.CommonMessenger;
 import chat.dim.Session;
 import chat.dim.dbi.SessionDBI;
+import chat.dim.format.JSONMap;
+import chat.dim.format.UTF8;
+import chat.dim.log.Log;
 import chat.dim.port.Departure;
 import chat.dim.protocol.Content;
+import chat.dim.protocol.EntityType;
 import chat.dim.protocol.ID;
 import chat.dim.protocol.InstantMessage;
 import chat.dim.protocol.ReliableMessage;
+import chat.dim.queue.MessageSpool;
 import chat.dim.type.Pair;
 
 public abstract class BaseSession extends GateKeeper implements Session {
@@ -50,11 +57,16 @@ public abstract class BaseSession extends GateKeeper implements Session {
     private ID identifier;
     private WeakReference<CommonMessenger> messengerRef;
 
+    private MessageSpool spool;     // durable outgoing messages, can be shared by sessions
+    private volatile boolean replayed;
+
     public BaseSession(SocketAddress remote, SocketChannel sock, SessionDBI sdb) {
         super(remote, sock);
         database = sdb;
         identifier = null;
         messengerRef = null;
+        spool = null;
+        replayed = false;
     }
 
     @Override
@@ -88,10 +100,160 @@ public abstract class BaseSession extends GateKeeper implements Session {
         messengerRef = messenger == null ? null : new WeakReference<>(messenger);
     }
 
+    public MessageSpool getSpool() {
+        return spool;
+    }
+    public void setSpool(MessageSpool messageSpool) {
+        spool = messageSpool;
+    }
+
+    @Override
+    public boolean setActive(boolean flag, Date when) {
+        if (!flag) {
+            // replay the spooled messages after reconnected
+            replayed = false;
+        }
+        return super.setActive(flag, when);
+    }
+
     @Override
     public boolean queueMessagePackage(ReliableMessage msg, byte[] data, int priority) {
+        if (isQueueFull()) {
+            // back pressure: refuse before packing the data
+            Log.warning("message queue is full, refused: " + msg.getSender() + " -> " + msg.getReceiver());
+            return false;
+        }
+        // 1. write through the spool before queueing,
+        //    so it would not be retired before appended
+        MessageSpool messageSpool = spool;
+        String key = null;
+        if (messageSpool != null && isSpoolable(msg)) {
+            key = getSpoolKey(msg.getReceiver(), msg.getString("signature", null));
+            if (messageSpool.append(key, priority, data) <= 0) {
+                // failed, or spooled by the previous call which is still waiting
+                key = null;
+            }
+        }
+        // 2. append to the waiting queue
         Departure ship = dockerPack(data, priority);
-        return queueAppend(msg, ship);
+        boolean ok = queueAppend(msg, ship, data);
+        if (!ok && key != null) {
+            // only retire the entry created by this call
+            messageSpool.retire(key);
+        }
+        return ok;
+    }
+
+    /**
+     *  Check whether the message should be spooled for replaying
+     *  (messages to stations/bots and broadcast messages are session related, no need to resend)
+     */
+    protected boolean isSpoolable(ReliableMessage msg) {
+        ID receiver = msg.getReceiver();
+        if (receiver.isBroadcast()) {
+            return false;
+        }
+        int type = receiver.getType();
+        return !EntityType.STATION.equals(type) && !EntityType.BOT.equals(type);
+    }
+
+    /**
+     *  Build key for the spooled message
+     */
+    public static String getSpoolKey(ID receiver, String signature) {
+        return receiver + ":" + signature;
+    }
+
+    @Override
+    protected void onMessageSent(ReliableMessage msg) {
+        MessageSpool messageSpool = spool;
+        if (messageSpool != null && msg != null) {
+            messageSpool.retire(getSpoolKey(msg.getReceiver(), msg.getString("signature", null)));
+        }
+    }
+
+    /**
+     *  Retire the spooled message when the receipt responded
+     *
+     * @param receiver  - original receiver
+     * @param signature - original signature
+     * @return false if not found
+     */
+    public boolean retireMessage(ID receiver, String signature) {
+        MessageSpool messageSpool = spool;
+        if (messageSpool == null || receiver == null || signature == null) {
+            return false;
+        }
+        if (messageSpool.retire(getSpoolKey(receiver, signature))) {
+            return true;
+        }
+        // the receipt may carry the tail of the signature only
+        return messageSpool.retire(getSpoolKey(receiver, ""), signature);
+    }
+
+    /**
+     *  Check whether it's ready to resend the spooled messages
+     */
+    protected boolean isReplayable() {
+        return isActive() && getIdentifier() != null;
+    }
+
+    @Override
+    public boolean process() {
+        MessageSpool messageSpool = spool;
+        if (!replayed && messageSpool != null && isReplayable()) {
+            replayed = true;
+            replaySpool(messageSpool);
+        }
+        return super.process();
+    }
+
+    /**
+     *  Append the spooled messages of current user to the waiting queue again
+     *
+     * @return count of queued messages
+     */
+    protected int replaySpool(MessageSpool messageSpool) {
+        ID user = getIdentifier();
+        int count = 0;
+        byte[] data;
+        ReliableMessage msg;
+        for (MessageSpool.Entry entry : messageSpool.getEntries()) {
+            data = entry.getPayload();
+            // parse directly, the messenger would drop the messages seen before as duplicated
+            msg = parseMessage(data);
+            if (msg == null) {
+                Log.error("[SPOOL] failed to parse message: " + entry.key);
+                messageSpool.retire(entry.id);
+                continue;
+            } else if (!user.equals(msg.getSender())) {
+                // message of other user
+                continue;
+            }
+            // duplicated messages will be ignored by the queue
+            if (queueAppend(msg, dockerPack(data, entry.priority), data)) {
+                ++count;
+            }
+        }
+        if (count > 0) {
+            Log.info("[SPOOL] replayed " + count + " messages for " + user + ", " + messageSpool);
+        }
+        return count;
+    }
+
+    private static ReliableMessage parseMessage(byte[] data) {
+        String json = UTF8.decode(data);
+        if (json == null) {
+            return null;
+        }
+        Map<String, Object> info;
+        try {
+            info = JSONMap.decode(json);
+        } catch (Exception e) {
+            Log.error("[SPOOL] json error: " + e);
+            return null;
+        }
+        return ReliableMessage.parse(info);
     }
 
     //
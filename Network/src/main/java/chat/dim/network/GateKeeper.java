@@ -36,7 +36,10 @@ import java.net.Socket;
 import java.net.SocketAddress;
 import java.net.SocketException;
 import java.nio.channels.SocketChannel;
+import java.util.Collections;
 import java.util.Date;
+import java.util.Map;
+import java.util.WeakHashMap;
 
 import chat.dim.log.Log;
 import chat.dim.net.Connection;
@@ -46,6 +49,7 @@ import chat.dim.port.Arrival;
 import chat.dim.port.Departure;
 import chat.dim.port.Porter;
 import chat.dim.protocol.ReliableMessage;
+import chat.dim.queue.MessageBatch;
 import chat.dim.queue.MessageQueue;
 import chat.dim.queue.MessageWrapper;
 import chat.dim.skywalker.Runner;
@@ -56,14 +60,45 @@ import chat.dim.tcp.StreamHub;
 public class GateKeeper extends Runner implements Porter.Delegate {
 
     private final SocketAddress remoteAddress;
+    private final SocketChannel socketChannel;  // server side only
     private final CommonGate<StreamHub> gate;
     private final MessageQueue queue;
     private boolean active;
     private Date lastActive;  // last update time
 
+    // max time to sleep when nothing to do,
+    // the keeper will be woken up at once when a message queued,
+    // the docker status changed, or the socket is ready to read/write
+    public static long IDLE_INTERVAL = Runner.INTERVAL_SLOW;
+
+    private final Object signal = new Object();
+    private boolean signaled = false;  // guarded by 'signal'
+
+    //  Coalescing
+    //  ~~~~~~~~~~
+    //  pack the waiting messages with the same priority into one departure (JsON lines),
+    //  until the size/count budget reached, or the first message has waited for the linger time.
+    //
+    public static boolean COALESCE = true;
+    public static int BATCH_MAX_BYTES = 64 * 1024;  // 64 KB
+    public static int BATCH_MAX_COUNT = 32;
+    // milliseconds to wait for more messages, 0 means only coalescing the messages already queued;
+    // it's ignored when driven by a session multiplexer
+    public static long BATCH_LINGER = 0;
+
+    private MessageBatch batch = null;  // accessed by the keeper thread only
+
+    // departures packed from batches, waiting for the sent/failed events
+    private final Map<Departure, MessageBatch> departingBatches = Collections.synchronizedMap(new WeakHashMap<>());
+
+    // event loop slot when driven by a session multiplexer,
+    // null means running in its own thread
+    private volatile SessionMultiplexer.Slot slot = null;
+
     public GateKeeper(SocketAddress remote, SocketChannel sock) {
         super(Runner.INTERVAL_SLOW);
         remoteAddress = remote;
+        socketChannel = sock;
         gate = createGate(remote, sock);
         queue = new MessageQueue();
         active = false;
@@ -141,6 +176,32 @@ public class GateKeeper extends Runner implements Porter.Delegate {
         return gate;
     }
 
+    /**
+     *  Get socket channel for watching incoming data
+     *
+     * @return null when the channel is created by the hub (client side)
+     */
+    public SocketChannel getSocketChannel() {
+        return socketChannel;
+    }
+
+    SessionMultiplexer.Slot getSlot() {
+        return slot;
+    }
+    void setSlot(SessionMultiplexer.Slot eventSlot) {
+        slot = eventSlot;
+    }
+
+    @Override
+    public void stop() {
+        super.stop();
+        // detach from the event loop
+        SessionMultiplexer.Slot eventSlot = slot;
+        if (eventSlot != null) {
+            eventSlot.detach();
+        }
+    }
+
     public boolean isActive() {
         return active;
     }
@@ -157,6 +218,10 @@ public class GateKeeper extends Runner implements Porter.Delegate {
         }
         active = flag;
         lastActive = when;
+        if (flag) {
+            // activated, send the waiting messages
+            wakeUp();
+        }
         return true;
     }
 
@@ -196,6 +261,11 @@ public class GateKeeper extends Runner implements Porter.Delegate {
             queue.purge();
             return false;
         }
+        // check lingering batch
+        MessageBatch pending = batch;
+        if (pending != null) {
+            return sendBatch(pending, docker);
+        }
         // get next message
         MessageWrapper wrapper = queue.next();
         if (wrapper == null) {
@@ -210,6 +280,10 @@ public class GateKeeper extends Runner implements Porter.Delegate {
             // msg sent?
             return true;
         }
+        if (COALESCE && MessageBatch.isCoalescable(wrapper.getPayload())) {
+            // try to pack with the following messages
+            return sendBatch(new MessageBatch(wrapper), docker);
+        }
         // try to push
         boolean ok = docker.sendShip(wrapper);
         if (!ok) {
@@ -218,6 +292,85 @@ public class GateKeeper extends Runner implements Porter.Delegate {
         return true;
     }
 
+    /**
+     *  Fill the batch with waiting messages, and send it out when it's ready
+     *
+     * @return false when lingering for more messages
+     */
+    protected boolean sendBatch(MessageBatch pending, Porter docker) {
+        // 1. take the following messages with same priority
+        MessageWrapper next;
+        while (pending.getCount() < BATCH_MAX_COUNT) {
+            next = queue.next(pending.getPriority(), BATCH_MAX_BYTES - pending.getSize() - 1);
+            if (next == null) {
+                break;
+            }
+            pending.add(next);
+        }
+        // 2. check budget
+        long linger = slot == null ? BATCH_LINGER : 0;
+        if (linger > 0 && pending.getCount() < BATCH_MAX_COUNT && queue.size() == 0
+                && System.currentTimeMillis() - pending.getTime() < linger) {
+            // waiting for more messages
+            batch = pending;
+            return false;
+        }
+        batch = null;
+        // 3. try to push
+        Departure ship;
+        if (pending.getCount() == 1) {
+            ship = pending.getWrappers().get(0);
+        } else {
+            ship = dockerPack(pending.getPayload(), pending.getPriority());
+            departingBatches.put(ship, pending);
+        }
+        boolean ok = docker.sendShip(ship);
+        if (!ok) {
+            Log.error("docker error: " + remoteAddress + ", " + docker + ", batch: " + pending.getCount());
+        }
+        return true;
+    }
+
+    @Override
+    protected void idle() {
+        long timeout = IDLE_INTERVAL;
+        MessageBatch pending = batch;
+        if (pending != null) {
+            // wake up when the lingering batch expired
+            long remaining = pending.getTime() + BATCH_LINGER - System.currentTimeMillis();
+            timeout = Math.max(1, Math.min(timeout, remaining));
+        }
+        synchronized (signal) {
+            if (!signaled) {
+                try {
+                    signal.wait(timeout);
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+            }
+            signaled = false;
+        }
+    }
+
+    /**
+     *  Schedule the keeper to process immediately
+     *  (if it's sleeping now, or it will not sleep after this turn)
+     */
+    public void wakeUp() {
+        SessionMultiplexer.Slot eventSlot = slot;
+        if (eventSlot != null) {
+            // driven by event loop
+            eventSlot.signal();
+            return;
+        }
+        synchronized (signal) {
+            if (!signaled) {
+                signaled = true;
+                signal.notifyAll();
+            }
+        }
+    }
+
     protected Departure dockerPack(byte[] payload, int priority) {
         Porter docker = gate.fetchPorter(remoteAddress, null);
         assert docker instanceof DeparturePacker : "departure packer error: " + docker;
@@ -225,7 +378,28 @@ public class GateKeeper extends Runner implements Porter.Delegate {
     }
 
     protected boolean queueAppend(ReliableMessage msg, Departure ship) {
-        return queue.append(msg, ship);
+        return queueAppend(msg, ship, null);
+    }
+
+    /**
+     *  Append message with its serialized data, so it can be coalesced with others
+     */
+    protected boolean queueAppend(ReliableMessage msg, Departure ship, byte[] payload) {
+        boolean ok = queue.append(msg, ship, payload);
+        if (ok) {
+            // send it out without waiting for the next turn
+            wakeUp();
+        }
+        return ok;
+    }
+
+    /**
+     *  Check whether the waiting queue is full
+     *
+     * @return true on back pressure
+     */
+    public boolean isQueueFull() {
+        return queue.isFull();
     }
 
     //
@@ -235,6 +409,8 @@ public class GateKeeper extends Runner implements Porter.Delegate {
     @Override
     public void onPorterStatusChanged(Porter.Status previous, Porter.Status current, Porter docker) {
         Log.info("docker status changed: " + previous + " => " + current + ", " + docker);
+        // maybe ready to send the waiting messages now
+        wakeUp();
     }
 
     @Override
@@ -244,12 +420,31 @@ public class GateKeeper extends Runner implements Porter.Delegate {
 
     @Override
     public void onPorterSent(Departure ship, Porter docker) {
-        // TODO: remove sent message from local cache
+        if (ship instanceof MessageWrapper) {
+            onMessageSent(((MessageWrapper) ship).getMessage());
+            return;
+        }
+        MessageBatch pending = departingBatches.remove(ship);
+        if (pending != null) {
+            for (MessageWrapper wrapper : pending.getWrappers()) {
+                onMessageSent(wrapper.getMessage());
+            }
+        }
+    }
+
+    /**
+     *  Called when the message was sent out
+     *
+     * @param msg - sent message
+     */
+    protected void onMessageSent(ReliableMessage msg) {
+        // override for removing sent message from local cache
     }
 
     @Override
     public void onPorterFailed(IOError error, Departure ship, Porter docker) {
         Log.error("docker failed to send ship: " + ship + ", " + docker);
+        departingBatches.remove(ship);
     }
 
     @Override
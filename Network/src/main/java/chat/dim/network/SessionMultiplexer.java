@@ -0,0 +1,401 @@
+/* license: https://mit-license.org
+ *
+ *  DIMP : Decentralized Instant Messaging Protocol
+ *
+ *                                Written in 2026 by Moky <albert.moky@gmail.com>
+ *
+ * ==============================================================================
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2026 Albert Moky
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * ==============================================================================
+ */
+package chat.dim.network;
+
+import java.io.IOException;
+import java.nio.channels.ClosedChannelException;
+import java.nio.channels.SelectionKey;
+import java.nio.channels.Selector;
+import java.nio.channels.SocketChannel;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import chat.dim.log.Log;
+
+/**
+ *  Session Multiplexer
+ *  ~~~~~~~~~~~~~~~~~~~
+ *
+ *  Drives many gate keepers with a small pool of event loops,
+ *  instead of starting a thread for each session.
+ *
+ *  Each keeper is pinned to one loop, so its packages are always processed
+ *  in order by the same thread; the loop only processes the keepers which are:
+ *      1. busy in last turn,
+ *      2. woken up (message queued, docker status changed),
+ *      3. ready to read (socket registered in the loop's selector),
+ *      4. or all of them every idle interval
+ *         (for heartbeat, reconnecting & the channels hidden in client hubs).
+ */
+public class SessionMultiplexer {
+
+    // default number of event loops
+    public static int LOOPS = Math.min(4, Runtime.getRuntime().availableProcessors());
+
+    private final EventLoop[] loops;
+
+    public SessionMultiplexer(int count) {
+        super();
+        assert count > 0 : "event loops count error: " + count;
+        loops = new EventLoop[count];
+        for (int index = 0; index < count; ++index) {
+            loops[index] = new EventLoop("SessionMultiplexer-" + index);
+        }
+    }
+
+    public SessionMultiplexer() {
+        this(LOOPS);
+    }
+
+    private static SessionMultiplexer shared = null;
+
+    public static synchronized SessionMultiplexer getInstance() {
+        SessionMultiplexer multiplexer = shared;
+        if (multiplexer == null) {
+            multiplexer = new SessionMultiplexer();
+            multiplexer.start();
+            shared = multiplexer;
+        }
+        return multiplexer;
+    }
+
+    public void start() {
+        for (EventLoop loop : loops) {
+            loop.start();
+        }
+    }
+
+    public void stop() {
+        for (EventLoop loop : loops) {
+            loop.stop();
+        }
+    }
+
+    /**
+     *  Let an event loop drive the gate keeper,
+     *  call 'keeper.stop()' to detach it
+     *
+     * @param keeper - gate keeper (session)
+     */
+    public void attach(GateKeeper keeper) {
+        Slot slot = keeper.getSlot();
+        EventLoop loop;
+        if (slot != null) {
+            // pinned, keep the order with the previous detaching
+            loop = slot.loop;
+        } else {
+            loop = getIdleLoop();
+        }
+        loop.attach(keeper);
+    }
+
+    // the loop with the fewest keepers
+    private EventLoop getIdleLoop() {
+        EventLoop idle = loops[0];
+        for (EventLoop loop : loops) {
+            if (loop.count.get() < idle.count.get()) {
+                idle = loop;
+            }
+        }
+        return idle;
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder sb = new StringBuilder();
+        sb.append("<").append(getClass().getSimpleName()).append(">");
+        for (EventLoop loop : loops) {
+            sb.append("\n\t<loop name=\"").append(loop.name).append("\" keepers=").append(loop.count.get())
+                    .append(" />");
+        }
+        sb.append("\n</").append(getClass().getSimpleName()).append(">");
+        return sb.toString();
+    }
+
+    /**
+     *  Keeper in event loop
+     */
+    static final class Slot {
+
+        final EventLoop loop;
+        final GateKeeper keeper;
+
+        private final AtomicBoolean signaled = new AtomicBoolean(false);
+        private SelectionKey key = null;
+        private boolean attached = false;   // guarded by loop thread
+        private boolean scheduled = false;  // guarded by loop thread
+
+        Slot(EventLoop loop, GateKeeper keeper) {
+            super();
+            this.loop = loop;
+            this.keeper = keeper;
+        }
+
+        /**
+         *  Schedule the keeper in next turn
+         */
+        void signal() {
+            if (signaled.compareAndSet(false, true)) {
+                loop.signaledSlots.offer(this);
+                loop.wakeUp();
+            }
+        }
+
+        void detach() {
+            loop.detach(this);
+        }
+    }
+
+    static final class EventLoop implements Runnable {
+
+        final String name;
+        final AtomicInteger count = new AtomicInteger(0);
+
+        private final List<Slot> slots = new ArrayList<>();              // guarded by loop thread
+        private final Queue<Runnable> pendingTasks = new ConcurrentLinkedQueue<>();
+        private final Queue<Slot> signaledSlots = new ConcurrentLinkedQueue<>();
+
+        // keepers to be processed in this turn, and the busy ones for next turn
+        private List<Slot> scheduledSlots = new ArrayList<>();         // guarded by loop thread
+        private List<Slot> busySlots = new ArrayList<>();              // guarded by loop thread
+        private final AtomicBoolean wakenUp = new AtomicBoolean(false);
+
+        private Selector selector = null;
+        private Thread thread = null;
+        private volatile boolean running = false;
+
+        EventLoop(String name) {
+            super();
+            this.name = name;
+        }
+
+        synchronized void start() {
+            if (thread != null) {
+                // already started
+                return;
+            }
+            try {
+                selector = Selector.open();
+            } catch (IOException e) {
+                Log.error("failed to open selector: " + e);
+                throw new IllegalStateException(e);
+            }
+            running = true;
+            Thread thr = new Thread(this, name);
+            thr.setDaemon(true);
+            thr.start();
+            thread = thr;
+        }
+
+        synchronized void stop() {
+            running = false;
+            Selector sel = selector;
+            if (sel != null) {
+                sel.wakeup();
+            }
+            Thread thr = thread;
+            thread = null;
+            if (thr != null && thr != Thread.currentThread()) {
+                try {
+                    thr.join(2000);
+                } catch (InterruptedException e) {
+                    e.printStackTrace();
+                }
+            }
+        }
+
+        void wakeUp() {
+            if (wakenUp.compareAndSet(false, true)) {
+                Selector sel = selector;
+                if (sel != null) {
+                    sel.wakeup();
+                }
+            }
+        }
+
+        void attach(GateKeeper keeper) {
+            Slot slot = new Slot(this, keeper);
+            keeper.setSlot(slot);
+            count.incrementAndGet();
+            pendingTasks.offer(() -> {
+                slot.attached = true;
+                keeper.setup();
+                register(slot);
+                slots.add(slot);
+            });
+            wakeUp();
+        }
+
+        void detach(Slot slot) {
+            pendingTasks.offer(() -> {
+                if (!slot.attached) {
+                    return;
+                }
+                slot.attached = false;
+                slots.remove(slot);
+                count.decrementAndGet();
+                SelectionKey key = slot.key;
+                if (key != null) {
+                    key.cancel();
+                    slot.key = null;
+                }
+                GateKeeper keeper = slot.keeper;
+                if (keeper.getSlot() == slot) {
+                    // not attached again
+                    keeper.setSlot(null);
+                }
+                keeper.finish();
+            });
+            wakeUp();
+        }
+
+        // register socket to watch incoming data
+        private void register(Slot slot) {
+            SocketChannel sock = slot.keeper.getSocketChannel();
+            if (sock == null) {
+                // the channel is hidden in the hub, it will be polled every idle interval
+                return;
+            }
+            try {
+                if (sock.isBlocking()) {
+                    sock.configureBlocking(false);
+                }
+                slot.key = sock.register(selector, SelectionKey.OP_READ, slot);
+            } catch (ClosedChannelException e) {
+                Log.warning("socket closed: " + slot.keeper.getRemoteAddress());
+            } catch (IOException e) {
+                Log.error("failed to register socket: " + slot.keeper.getRemoteAddress() + ", " + e);
+            }
+        }
+
+        @Override
+        public void run() {
+            long lastTick = 0;
+            long now;
+            List<Slot> busy;
+            Slot slot;
+            while (running) {
+                // wake up calls after here will break the next selecting
+                wakenUp.set(false);
+                // 1. attach/detach keepers
+                Runnable task;
+                while ((task = pendingTasks.poll()) != null) {
+                    try {
+                        task.run();
+                    } catch (Exception e) {
+                        Log.error("event loop task error: " + e);
+                        e.printStackTrace();
+                    }
+                }
+                // 2. schedule keepers: busy in last turn, woken up, or all of them every idle interval
+                busy = busySlots;
+                busySlots = new ArrayList<>();
+                for (Slot item : busy) {
+                    schedule(item);
+                }
+                while ((slot = signaledSlots.poll()) != null) {
+                    slot.signaled.set(false);
+                    schedule(slot);
+                }
+                now = System.currentTimeMillis();
+                if (now - lastTick >= GateKeeper.IDLE_INTERVAL) {
+                    lastTick = now;
+                    for (Slot item : slots) {
+                        schedule(item);
+                    }
+                }
+                // 3. process keepers
+                for (Slot item : scheduledSlots) {
+                    item.scheduled = false;
+                    if (item.attached && process(item.keeper)) {
+                        busySlots.add(item);
+                    }
+                }
+                scheduledSlots.clear();
+                // 4. wait for events
+                try {
+                    if (!busySlots.isEmpty() || !pendingTasks.isEmpty() || !signaledSlots.isEmpty()) {
+                        selector.selectNow();
+                    } else {
+                        long timeout = lastTick + GateKeeper.IDLE_INTERVAL - System.currentTimeMillis();
+                        if (timeout > 0) {
+                            selector.select(timeout);
+                        } else {
+                            selector.selectNow();
+                        }
+                    }
+                } catch (IOException e) {
+                    Log.error("selector error: " + e);
+                }
+                Set<SelectionKey> keys = selector.selectedKeys();
+                for (SelectionKey key : keys) {
+                    // socket ready to read
+                    schedule((Slot) key.attachment());
+                }
+                keys.clear();
+            }
+            // 5. finish all keepers
+            for (Slot item : slots) {
+                item.attached = false;
+                item.keeper.finish();
+            }
+            slots.clear();
+            count.set(0);
+            try {
+                selector.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+        }
+
+        private void schedule(Slot slot) {
+            if (slot.attached && !slot.scheduled) {
+                slot.scheduled = true;
+                scheduledSlots.add(slot);
+            }
+        }
+
+        private static boolean process(GateKeeper keeper) {
+            try {
+                return keeper.process();
+            } catch (Exception e) {
+                Log.error("gate keeper error: " + keeper.getRemoteAddress() + ", " + e);
+                e.printStackTrace();
+                return false;
+            }
+        }
+    }
+}
@@ -0,0 +1,116 @@
+/* license: https://mit-license.org
+ *
+ *  DIMP : Decentralized Instant Messaging Protocol
+ *
+ *                                Written in 2026 by Moky <albert.moky@gmail.com>
+ *
+ * ==============================================================================
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2026 Albert Moky
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * ==============================================================================
+ */
+package chat.dim.queue;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ *  Message Batch
+ *  ~~~~~~~~~~~~~
+ *  Waiting messages with the same priority, packed into one departure as JsON lines:
+ *
+ *      '{...}\n{...}\n{...}'
+ *
+ *  the receiver splits them by lines (see 'ClientSession.getDataPackages()').
+ */
+public final class MessageBatch {
+
+    private final int priority;
+    private final long time;  // queued time of the first message
+    private final List<MessageWrapper> wrappers = new ArrayList<>();
+    private int size = 0;     // length of payload, including separators
+
+    public MessageBatch(MessageWrapper first) {
+        super();
+        assert isCoalescable(first.getPayload()) : "cannot coalesce message: " + first.getMessage();
+        priority = first.getPriority();
+        time = first.getTime();
+        add(first);
+    }
+
+    public int getPriority() {
+        return priority;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
+    public int getCount() {
+        return wrappers.size();
+    }
+
+    public int getSize() {
+        return size;
+    }
+
+    public List<MessageWrapper> getWrappers() {
+        return wrappers;
+    }
+
+    public void add(MessageWrapper wrapper) {
+        assert wrapper.getPriority() == priority : "priority not match: " + wrapper.getPriority() + ", " + priority;
+        if (!wrappers.isEmpty()) {
+            // separator
+            size += 1;
+        }
+        size += wrapper.getPayload().length;
+        wrappers.add(wrapper);
+    }
+
+    /**
+     *  Join all messages with '\n'
+     */
+    public byte[] getPayload() {
+        byte[] data = new byte[size];
+        int pos = 0;
+        byte[] payload;
+        for (MessageWrapper item : wrappers) {
+            if (pos > 0) {
+                data[pos++] = '\n';
+            }
+            payload = item.getPayload();
+            System.arraycopy(payload, 0, data, pos, payload.length);
+            pos += payload.length;
+        }
+        assert pos == size : "batch size error: " + pos + ", " + size;
+        return data;
+    }
+
+    /**
+     *  Only compact JsON messages can be joined as lines
+     */
+    public static boolean isCoalescable(byte[] payload) {
+        return payload != null && payload.length > 1
+                && payload[0] == '{' && payload[payload.length - 1] == '}';
+    }
+}
@@ -30,111 +30,114 @@
  */
 package chat.dim.queue;
 
-import java.util.ArrayList;
-import java.util.HashMap;
-import java.util.Iterator;
-import java.util.List;
-import java.util.Map;
-import java.util.concurrent.locks.Lock;
-import java.util.concurrent.locks.ReadWriteLock;
-import java.util.concurrent.locks.ReentrantReadWriteLock;
+import java.util.Queue;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentMap;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 import chat.dim.log.Log;
 import chat.dim.port.Departure;
 import chat.dim.protocol.ID;
 import chat.dim.protocol.ReliableMessage;
 
+/**
+ *  Outgoing Message Queue
+ *  ~~~~~~~~~~~~~~~~~~~~~~
+ *
+ *  Each priority has its own lock-free FIFO, and all waiting messages are
+ *  indexed by (signature, receiver), so appending/fetching are O(1) and
+ *  never block the gate keeper.
+ *
+ *  When the queue reaches its capacity, new messages will be refused,
+ *  the caller should treat it as back pressure and retry later.
+ */
 public final class MessageQueue {
 
-    private final List<Integer> priorities = new ArrayList<>();
-    private final Map<Integer, List<MessageWrapper>> fleets = new HashMap<>();
-    private final ReadWriteLock lock = new ReentrantReadWriteLock();
+    public static int DEFAULT_CAPACITY = 64 * 1024;
+
+    // priority => fleet (sorted by priority, smaller is faster)
+    private final ConcurrentSkipListMap<Integer, Queue<MessageWrapper>> fleets = new ConcurrentSkipListMap<>();
+    // (signature, receiver) => waiting message
+    private final ConcurrentMap<Fingerprint, MessageWrapper> index = new ConcurrentHashMap<>();
+
+    private final AtomicInteger count = new AtomicInteger(0);
+    private final int capacity;
+
+    public MessageQueue(int maxSize) {
+        super();
+        assert maxSize > 0 : "queue capacity error: " + maxSize;
+        capacity = maxSize;
+    }
+
+    public MessageQueue() {
+        this(DEFAULT_CAPACITY);
+    }
+
+    public int getCapacity() {
+        return capacity;
+    }
+
+    /**
+     *  Count of waiting messages
+     */
+    public int size() {
+        return count.get();
+    }
+
+    public boolean isFull() {
+        return count.get() >= capacity;
+    }
 
     /**
      *  Append message with departure ship
      *
      * @param rMsg - outgoing message
      * @param ship - departure ship
-     * @return false on duplicated
+     * @return false on duplicated, or the queue is full
      */
     public boolean append(ReliableMessage rMsg, Departure ship) {
-        boolean ok = true;
-        Lock writeLock = lock.writeLock();
-        writeLock.lock();
-        try {
-            // 1. choose an array with priority
-            int priority = ship.getPriority();
-            List<MessageWrapper> array = fleets.get(priority);
-            if (array == null) {
-                // 1.1. create new array for this priority
-                array = new ArrayList<>();
-                fleets.put(priority, array);
-                // 1.2. insert the priority in a sorted list
-                insert(priority);
-            } else {
-                // 1.3. check duplicated
-                Object signature = rMsg.get("signature");
-                assert signature != null : "signature not found: " + rMsg;
-                ReliableMessage item;
-                for (MessageWrapper wrapper : array) {
-                    item = wrapper.getMessage();
-                    if (isDuplicated(item, rMsg)) {
-                        Log.warning("[QUEUE] duplicated message: " + signature);
-                        ok = false;
-                        break;
-                    }
-                }
-            }
-            if (ok) {
-                // 2. append with wrapper
-                MessageWrapper wrapper = new MessageWrapper(rMsg, ship);
-                array.add(wrapper);
-            }
-        } finally {
-            writeLock.unlock();
-        }
-        return ok;
+        return append(rMsg, ship, null);
     }
-    private boolean isDuplicated(ReliableMessage msg1, ReliableMessage msg2) {
-        if (msg1 == null || msg2 == null) {
-            return false;
-        }
-        Object sig1 = msg1.get("signature");
-        Object sig2 = msg2.get("signature");
-        if (sig1 == null || sig2 == null) {
-            assert false : "signature should not empty here: " + msg1 + ", " + msg2;
-            return false;
-        } else if (!sig1.equals(sig2)) {
+
+    /**
+     *  Append message with departure ship & serialized data
+     *
+     * @param rMsg    - outgoing message
+     * @param ship    - departure ship
+     * @param payload - serialized message, for coalescing
+     * @return false on duplicated, or the queue is full
+     */
+    public boolean append(ReliableMessage rMsg, Departure ship, byte[] payload) {
+        // 1. reserve a position
+        int total = count.incrementAndGet();
+        if (total > capacity) {
+            count.decrementAndGet();
+            Log.warning("[QUEUE] queue is full: " + capacity + ", refused message: " + rMsg.getReceiver());
             return false;
         }
-        // maybe it's a group message split for every members,
-        // so we still need to check receiver here.
-        ID to1 = msg1.getReceiver();
-        ID to2 = msg2.getReceiver();
-        if (to1 == null || to2 == null) {
-            assert false : "receiver should not empty here: " + msg1 + ", " + msg2;
+        MessageWrapper wrapper = new MessageWrapper(rMsg, ship, payload);
+        // 2. check duplicated
+        //    maybe it's a group message split for every members,
+        //    so we still need to check receiver here.
+        Fingerprint fp = Fingerprint.from(rMsg);
+        if (fp != null && index.putIfAbsent(fp, wrapper) != null) {
+            count.decrementAndGet();
+            Log.warning("[QUEUE] duplicated message: " + fp.signature);
             return false;
         }
-        return to1.equals(to2);
-    }
-    private void insert(int priority) {
-        int total = priorities.size();
-        int index = 0, value;
-        // seeking position for new priority
-        for (; index < total; ++index) {
-            value = priorities.get(index);
-            if (value == priority) {
-                // duplicated
-                return;
-            } else if (value > priority) {
-                // got it
-                break;
+        // 3. append to the fleet with priority
+        Queue<MessageWrapper> fleet = fleets.get(ship.getPriority());
+        if (fleet == null) {
+            fleet = new ConcurrentLinkedQueue<>();
+            Queue<MessageWrapper> exists = fleets.putIfAbsent(ship.getPriority(), fleet);
+            if (exists != null) {
+                fleet = exists;
             }
-            // current value is smaller than the new value,
-            // keep going
         }
-        // insert new value before the bigger one
-        priorities.add(index, priority);
+        fleet.offer(wrapper);
+        return true;
     }
 
     /**
@@ -143,45 +146,104 @@ public final class MessageQueue {
      * @return MessageWrapper
      */
     public MessageWrapper next() {
-        MessageWrapper target = null;
-        Lock writeLock = lock.writeLock();
-        writeLock.lock();
-        try {
-            for (int priority : priorities) {
-                // get first task
-                List<MessageWrapper> array = fleets.get(priority);
-                if (array != null && array.size() > 0) {
-                    target = array.remove(0);
-                    break;
-                }
+        MessageWrapper target;
+        for (Queue<MessageWrapper> fleet : fleets.values()) {
+            // get first task
+            target = fleet.poll();
+            if (target == null) {
+                continue;
+            }
+            count.decrementAndGet();
+            Fingerprint fp = Fingerprint.from(target.getMessage());
+            if (fp != null) {
+                index.remove(fp, target);
             }
-        } finally {
-            writeLock.unlock();
+            return target;
+        }
+        return null;
+    }
+
+    /**
+     *  Get next message with the priority, only if its payload can be coalesced and fits the size
+     *  (NOTICE: the gate keeper is the only consumer, so peek & poll are safe here)
+     *
+     * @param priority - same priority with the batch
+     * @param maxSize  - max length of payload
+     * @return null when no message fits
+     */
+    public MessageWrapper next(int priority, int maxSize) {
+        Queue<MessageWrapper> fleet = fleets.get(priority);
+        if (fleet == null) {
+            return null;
+        }
+        MessageWrapper target = fleet.peek();
+        if (target == null) {
+            return null;
+        }
+        byte[] payload = target.getPayload();
+        if (!MessageBatch.isCoalescable(payload) || payload.length > maxSize) {
+            return null;
+        } else if (fleet.poll() != target) {
+            assert false : "message queue should have only one consumer";
+            return null;
+        }
+        count.decrementAndGet();
+        Fingerprint fp = Fingerprint.from(target.getMessage());
+        if (fp != null) {
+            index.remove(fp, target);
         }
         return target;
     }
 
     public void purge() {
-        Lock writeLock = lock.writeLock();
-        writeLock.lock();
-        try {
-            Iterator<Integer> pit = priorities.iterator();
-            int prior;
-            List<MessageWrapper> array;
-            while (pit.hasNext()) {
-                prior = pit.next();
-                array = fleets.get(prior);
-                if (array == null) {
-                    // this priority is empty
-                    pit.remove();
-                } else if (array.size() == 0) {
-                    // this priority is empty
-                    fleets.remove(prior);
-                    pit.remove();
-                }
+        // fleets are kept once created: there are only a few priorities,
+        // and removing an empty fleet here would race with 'append()'
+    }
+
+    /**
+     *  Key for duplicated checking
+     */
+    private static final class Fingerprint {
+
+        final Object signature;
+        final ID receiver;
+
+        private final int hash;
+
+        Fingerprint(Object sig, ID to) {
+            signature = sig;
+            receiver = to;
+            hash = sig.hashCode() * 31 + to.hashCode();
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            } else if (other instanceof Fingerprint) {
+                Fingerprint fp = (Fingerprint) other;
+                return hash == fp.hash && signature.equals(fp.signature) && receiver.equals(fp.receiver);
+            } else {
+                return false;
+            }
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
+
+        static Fingerprint from(ReliableMessage rMsg) {
+            if (rMsg == null) {
+                return null;
+            }
+            Object signature = rMsg.get("signature");
+            ID receiver = rMsg.getReceiver();
+            if (signature == null || receiver == null) {
+                assert false : "signature/receiver should not empty here: " + rMsg;
+                return null;
             }
-        } finally {
-            writeLock.unlock();
+            return new Fingerprint(signature, receiver);
         }
     }
 }
@@ -0,0 +1,604 @@
+/* license: https://mit-license.org
+ *
+ *  DIMP : Decentralized Instant Messaging Protocol
+ *
+ *                                Written in 2026 by Moky <albert.moky@gmail.com>
+ *
+ * ==============================================================================
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2026 Albert Moky
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * ==============================================================================
+ */
+package chat.dim.queue;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.zip.CRC32;
+
+import chat.dim.log.Log;
+import chat.dim.skywalker.Runner;
+
+/**
+ *  Outbound Message Spool
+ *  ~~~~~~~~~~~~~~~~~~~~~~
+ *
+ *  Append-only segment files (memory-mapped) for outgoing messages,
+ *  so the waiting messages can be replayed after crash or reconnecting.
+ *
+ *  Record:
+ *      [int length][byte type][long id][int crc][body: length bytes]
+ *
+ *      ENTRY  - body: [int priority][short key length][key][payload]
+ *      RETIRE - body: empty, retires the entry with same id
+ *
+ *  Dirty pages are flushed by the background thread every SYNC_INTERVAL;
+ *  the oldest segments are deleted when all entries retired, or rewritten
+ *  when most of the entries retired.
+ */
+public class MessageSpool extends Runner {
+
+    public static int SEGMENT_SIZE = 4 * 1024 * 1024;  // 4 MB
+    public static long SYNC_INTERVAL = 200;            // milliseconds
+    public static float COMPACT_RATIO = 0.25f;         // rewrite the oldest segment when live entries less than it
+    public static int COMPACT_THRESHOLD = 256;         // check compaction after so many entries retired
+
+    // length of the key tail indexed for retiring by suffix
+    public static final int TAIL_LENGTH = 8;
+
+    private static final byte ENTRY = 1;
+    private static final byte RETIRE = 2;
+    private static final int HEADER_SIZE = 4 + 1 + 8 + 4;  // length, type, id, crc
+
+    private static final String SUFFIX = ".spool";
+
+    private final File directory;
+
+    // guarded by this
+    private final List<Segment> segments = new ArrayList<>();    // sorted by sequence
+    private final TreeMap<Long, Entry> entries = new TreeMap<>(); // live entries, sorted by id
+    private final Map<String, Long> keys = new HashMap<>();       // key => entry id
+    private final Map<String, List<String>> tails = new HashMap<>();  // key tail => keys
+    private final Set<Segment> dirtySegments = new LinkedHashSet<>();
+    private long nextId = 1;
+    private long nextSequence = 1;
+    private int retiredCount = 0;
+
+    private long lastSync = 0;
+    private Thread thread = null;
+    private Thread hook = null;
+
+    public MessageSpool(File dir) throws IOException {
+        super(Runner.INTERVAL_SLOW);
+        if (!dir.isDirectory() && !dir.mkdirs()) {
+            throw new IOException("failed to create spool directory: " + dir);
+        }
+        directory = dir;
+        recover();
+    }
+
+    public File getDirectory() {
+        return directory;
+    }
+
+    /**
+     *  Count of live entries
+     */
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public synchronized boolean contains(String key) {
+        return keys.containsKey(key);
+    }
+
+    /**
+     *  Append an outgoing message
+     *
+     * @param key      - message key, for retiring by receipt
+     * @param priority - departure priority
+     * @param payload  - serialized message
+     * @return new entry ID; 0 if already spooled, or -1 on error
+     */
+    public synchronized long append(String key, int priority, byte[] payload) {
+        if (keys.containsKey(key)) {
+            // already spooled
+            return 0;
+        }
+        long id = nextId++;
+        try {
+            Entry entry = writeEntry(id, key, priority, payload);
+            entries.put(id, entry);
+            addKey(key, id);
+            return id;
+        } catch (IOException e) {
+            Log.error("[SPOOL] failed to append message: " + key + ", " + e);
+            return -1;
+        }
+    }
+
+    /**
+     *  Retire the entry when the message was sent/received
+     *
+     * @param key - message key
+     * @return false if not found
+     */
+    public synchronized boolean retire(String key) {
+        Long id = keys.get(key);
+        return id != null && retire(id);
+    }
+
+    /**
+     *  Retire the only entry which key matches both the prefix and suffix
+     *
+     * @param prefix - head of the key
+     * @param suffix - tail of the key, at least TAIL_LENGTH characters
+     * @return false if not found, or more than one matched
+     */
+    public synchronized boolean retire(String prefix, String suffix) {
+        if (suffix.length() < TAIL_LENGTH) {
+            return false;
+        }
+        List<String> candidates = tails.get(tailOf(suffix));
+        if (candidates == null) {
+            return false;
+        }
+        String matched = null;
+        for (String key : candidates) {
+            if (key.length() < prefix.length() + suffix.length()
+                    || !key.startsWith(prefix) || !key.endsWith(suffix)) {
+                continue;
+            } else if (matched != null) {
+                Log.warning("[SPOOL] ambiguous key: " + prefix + "..." + suffix);
+                return false;
+            }
+            matched = key;
+        }
+        return matched != null && retire(matched);
+    }
+
+    private static String tailOf(String key) {
+        int length = key.length();
+        return length > TAIL_LENGTH ? key.substring(length - TAIL_LENGTH) : key;
+    }
+
+    private void addKey(String key, long id) {
+        keys.put(key, id);
+        tails.computeIfAbsent(tailOf(key), k -> new ArrayList<>(1)).add(key);
+    }
+
+    private void removeKey(String key) {
+        keys.remove(key);
+        String tail = tailOf(key);
+        List<String> candidates = tails.get(tail);
+        if (candidates != null) {
+            candidates.remove(key);
+            if (candidates.isEmpty()) {
+                tails.remove(tail);
+            }
+        }
+    }
+
+    public synchronized boolean retire(long id) {
+        Entry entry = entries.remove(id);
+        if (entry == null) {
+            return false;
+        }
+        removeKey(entry.key);
+        entry.segment.live -= 1;
+        ++retiredCount;
+        try {
+            writeRecord(RETIRE, id, new byte[0]);
+        } catch (IOException e) {
+            // the entry will be replayed after restart, it's acceptable
+            Log.error("[SPOOL] failed to retire message: " + entry.key + ", " + e);
+        }
+        return true;
+    }
+
+    /**
+     *  Get all live entries for replaying, sorted by appending order
+     */
+    public synchronized List<Entry> getEntries() {
+        return new ArrayList<>(entries.values());
+    }
+
+    //
+    //  Records
+    //
+
+    private Entry writeEntry(long id, String key, int priority, byte[] payload) throws IOException {
+        byte[] keyData = key.getBytes(StandardCharsets.UTF_8);
+        ByteBuffer body = ByteBuffer.allocate(4 + 2 + keyData.length + payload.length);
+        body.putInt(priority);
+        body.putShort((short) keyData.length);
+        body.put(keyData);
+        body.put(payload);
+        Segment segment = writeRecord(ENTRY, id, body.array());
+        segment.live += 1;
+        segment.total += 1;
+        // payload is at the end of the record
+        int offset = segment.position - payload.length;
+        return new Entry(id, key, priority, segment, offset, payload.length);
+    }
+
+    private Segment writeRecord(byte type, long id, byte[] body) throws IOException {
+        int size = HEADER_SIZE + body.length;
+        Segment segment = getWritableSegment(size);
+        ByteBuffer buffer = segment.buffer.duplicate();
+        buffer.position(segment.position);
+        buffer.putInt(body.length);
+        buffer.put(type);
+        buffer.putLong(id);
+        buffer.putInt(checksum(type, id, body, 0, body.length));
+        buffer.put(body);
+        segment.position += size;
+        dirtySegments.add(segment);
+        return segment;
+    }
+
+    private static int checksum(byte type, long id, byte[] body, int offset, int length) {
+        CRC32 crc = new CRC32();
+        ByteBuffer head = ByteBuffer.allocate(9);
+        head.put(type);
+        head.putLong(id);
+        crc.update(head.array());
+        crc.update(body, offset, length);
+        return (int) crc.getValue();
+    }
+
+    private Segment getWritableSegment(int size) throws IOException {
+        int count = segments.size();
+        Segment last = count == 0 ? null : segments.get(count - 1);
+        if (last != null && last.position + size <= last.capacity) {
+            return last;
+        }
+        Segment segment = Segment.create(directory, nextSequence++, Math.max(SEGMENT_SIZE, size));
+        segments.add(segment);
+        return segment;
+    }
+
+    //
+    //  Recovery
+    //
+
+    private void recover() throws IOException {
+        File[] files = directory.listFiles((dir, name) -> name.endsWith(SUFFIX));
+        if (files == null) {
+            return;
+        }
+        Arrays.sort(files);
+        Segment segment;
+        for (File file : files) {
+            segment = Segment.open(file);
+            if (segment == null) {
+                Log.warning("[SPOOL] ignore file: " + file);
+                continue;
+            }
+            segments.add(segment);
+            nextSequence = segment.sequence + 1;
+            load(segment);
+        }
+        // count live entries for each segment
+        for (Entry entry : entries.values()) {
+            entry.segment.live += 1;
+            addKey(entry.key, entry.id);
+        }
+        int count = segments.size();
+        if (count > 0) {
+            // erase the torn tail of the last segment, it's the only one written when crashed
+            Segment last = segments.get(count - 1);
+            ByteBuffer buffer = last.buffer.duplicate();
+            buffer.position(last.position);
+            while (buffer.hasRemaining()) {
+                buffer.put((byte) 0);
+            }
+            last.buffer.force();
+        }
+        Log.info("[SPOOL] recovered " + entries.size() + " entries from " + count + " segments: " + directory);
+    }
+
+    private void load(Segment segment) {
+        ByteBuffer buffer = segment.buffer.duplicate();
+        int pos = 0;
+        int length;
+        byte type;
+        long id;
+        int crc;
+        byte[] body;
+        while (pos + HEADER_SIZE <= segment.capacity) {
+            buffer.position(pos);
+            length = buffer.getInt();
+            type = buffer.get();
+            id = buffer.getLong();
+            crc = buffer.getInt();
+            if (type != ENTRY && type != RETIRE) {
+                // end of records
+                break;
+            } else if (length < 0 || length > segment.capacity - pos - HEADER_SIZE) {
+                Log.warning("[SPOOL] record length error: " + length + ", " + segment.file);
+                break;
+            }
+            body = new byte[length];
+            buffer.get(body);
+            if (crc != checksum(type, id, body, 0, length)) {
+                Log.warning("[SPOOL] record broken at " + pos + ", " + segment.file);
+                break;
+            }
+            pos += HEADER_SIZE + length;
+            if (id >= nextId) {
+                nextId = id + 1;
+            }
+            if (type == RETIRE) {
+                entries.remove(id);
+                continue;
+            }
+            ByteBuffer info = ByteBuffer.wrap(body);
+            int priority = info.getInt();
+            int keyLength = info.getShort() & 0xFFFF;
+            String key = new String(body, 6, keyLength, StandardCharsets.UTF_8);
+            int offset = pos - (length - 6 - keyLength);
+            // the later one wins (rewritten by compaction)
+            entries.put(id, new Entry(id, key, priority, segment, offset, length - 6 - keyLength));
+            segment.total += 1;
+        }
+        segment.position = pos;
+    }
+
+    //
+    //  Sync & Compaction
+    //
+
+    /**
+     *  Flush dirty pages to disk
+     */
+    public void sync() {
+        List<Segment> dirty;
+        synchronized (this) {
+            if (dirtySegments.isEmpty()) {
+                return;
+            }
+            dirty = new ArrayList<>(dirtySegments);
+            dirtySegments.clear();
+        }
+        for (Segment segment : dirty) {
+            segment.buffer.force();
+        }
+        lastSync = System.currentTimeMillis();
+    }
+
+    /**
+     *  Delete/rewrite the oldest segments with few live entries
+     */
+    public synchronized void compact() {
+        retiredCount = 0;
+        Segment oldest;
+        List<Entry> moving;
+        while (segments.size() > 1) {
+            oldest = segments.get(0);
+            if (oldest.live > 0 && oldest.live >= oldest.total * COMPACT_RATIO) {
+                // still busy
+                break;
+            }
+            // rewrite live entries to the newest segment
+            moving = new ArrayList<>();
+            for (Entry entry : entries.values()) {
+                if (entry.segment == oldest) {
+                    moving.add(entry);
+                }
+            }
+            try {
+                for (Entry entry : moving) {
+                    entries.put(entry.id, writeEntry(entry.id, entry.key, entry.priority, entry.getPayload()));
+                }
+            } catch (IOException e) {
+                Log.error("[SPOOL] failed to rewrite segment: " + oldest.file + ", " + e);
+                break;
+            }
+            // the rewritten records must reach the disk before deleting the old ones
+            sync();
+            segments.remove(0);
+            dirtySegments.remove(oldest);
+            oldest.delete();
+            Log.info("[SPOOL] segment compacted: " + oldest.file + ", moved: " + moving.size());
+        }
+    }
+
+    //
+    //  Runner
+    //
+
+    @Override
+    public boolean process() {
+        long now = System.currentTimeMillis();
+        boolean busy = false;
+        if (now - lastSync >= SYNC_INTERVAL) {
+            sync();
+        }
+        if (retiredCount >= COMPACT_THRESHOLD) {
+            compact();
+            busy = true;
+        }
+        return busy;
+    }
+
+    @Override
+    protected void idle() {
+        try {
+            Thread.sleep(SYNC_INTERVAL);
+        } catch (InterruptedException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     *  Start a background thread, and flush dirty pages before JVM exits
+     */
+    public void start() {
+        Thread thr = new Thread(this);
+        thr.setDaemon(true);
+        thr.start();
+        thread = thr;
+        if (hook == null) {
+            hook = new Thread(this::sync);
+            Runtime.getRuntime().addShutdownHook(hook);
+        }
+    }
+
+    /**
+     *  Stop the background thread and flush all records
+     */
+    @Override
+    public void stop() {
+        super.stop();
+        // wait for thread stop
+        Thread thr = thread;
+        if (thr != null) {
+            thread = null;
+            try {
+                thr.join(2000);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }
+        sync();
+        Thread shutdownHook = hook;
+        if (shutdownHook != null) {
+            hook = null;
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException e) {
+                // JVM is shutting down
+            }
+        }
+    }
+
+    @Override
+    public synchronized String toString() {
+        return "<" + getClass().getSimpleName() + " entries=" + entries.size()
+                + " segments=" + segments.size() + " dir=\"" + directory + "\" />";
+    }
+
+    /**
+     *  Spooled message
+     */
+    public static final class Entry {
+
+        public final long id;
+        public final String key;
+        public final int priority;
+
+        private final Segment segment;
+        private final int offset;
+        private final int length;
+
+        Entry(long id, String key, int priority, Segment segment, int offset, int length) {
+            super();
+            this.id = id;
+            this.key = key;
+            this.priority = priority;
+            this.segment = segment;
+            this.offset = offset;
+            this.length = length;
+        }
+
+        public byte[] getPayload() {
+            byte[] payload = new byte[length];
+            ByteBuffer buffer = segment.buffer.duplicate();
+            buffer.position(offset);
+            buffer.get(payload);
+            return payload;
+        }
+    }
+
+    /**
+     *  Segment file, mapped into memory
+     */
+    static final class Segment {
+
+        final long sequence;
+        final File file;
+        final int capacity;
+        final MappedByteBuffer buffer;
+        private final RandomAccessFile raf;
+
+        int position = 0;  // end of valid records
+        int live = 0;      // count of live entries
+        int total = 0;     // count of all entries written
+
+        private Segment(long sequence, File file, RandomAccessFile raf, int capacity) throws IOException {
+            super();
+            this.sequence = sequence;
+            this.file = file;
+            this.capacity = capacity;
+            this.raf = raf;
+            this.buffer = raf.getChannel().map(FileChannel.MapMode.READ_WRITE, 0, capacity);
+        }
+
+        void delete() {
+            try {
+                raf.close();
+            } catch (IOException e) {
+                e.printStackTrace();
+            }
+            if (!file.delete()) {
+                Log.warning("[SPOOL] failed to delete segment: " + file);
+                file.deleteOnExit();
+            }
+        }
+
+        static Segment create(File dir, long sequence, int capacity) throws IOException {
+            File file = new File(dir, String.format("%016d%s", sequence, SUFFIX));
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            raf.setLength(capacity);
+            return new Segment(sequence, file, raf, capacity);
+        }
+
+        static Segment open(File file) throws IOException {
+            String name = file.getName();
+            long sequence;
+            try {
+                sequence = Long.parseLong(name.substring(0, name.length() - SUFFIX.length()));
+            } catch (NumberFormatException e) {
+                return null;
+            }
+            long length = file.length();
+            if (length <= HEADER_SIZE || length > Integer.MAX_VALUE) {
+                return null;
+            }
+            RandomAccessFile raf = new RandomAccessFile(file, "rw");
+            return new Segment(sequence, file, raf, (int) length);
+        }
+    }
+}
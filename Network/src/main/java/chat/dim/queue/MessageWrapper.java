@@ -41,17 +41,38 @@ public final class MessageWrapper implements Departure {
 
     private final ReliableMessage msg;
     private final Departure ship;
+    private final byte[] payload;  // serialized message, for coalescing
+    private final long time;       // queued time
 
-    public MessageWrapper(ReliableMessage rMsg, Departure departure) {
+    public MessageWrapper(ReliableMessage rMsg, Departure departure, byte[] data) {
         super();
         msg = rMsg;
         ship = departure;
+        payload = data;
+        time = System.currentTimeMillis();
+    }
+
+    public MessageWrapper(ReliableMessage rMsg, Departure departure) {
+        this(rMsg, departure, null);
     }
 
     public ReliableMessage getMessage() {
         return msg;
     }
 
+    /**
+     *  Get serialized message data
+     *
+     * @return null if not provided
+     */
+    public byte[] getPayload() {
+        return payload;
+    }
+
+    public long getTime() {
+        return time;
+    }
+
     @Override
     public Object getSN() {
         return ship.getSN();
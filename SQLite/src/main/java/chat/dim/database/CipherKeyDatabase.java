@@ -30,24 +30,41 @@
  */
 package chat.dim.database;
 
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+
 import chat.dim.crypto.PlainKey;
 import chat.dim.crypto.SymmetricAlgorithms;
 import chat.dim.crypto.SymmetricKey;
 import chat.dim.dbi.CipherKeyDBI;
-import chat.dim.mem.CacheManager;
-import chat.dim.mem.CachePair;
-import chat.dim.mem.CachePool;
 import chat.dim.protocol.ID;
 import chat.dim.sqlite.DatabaseConnector;
+import chat.dim.sqlite.WriteBehindQueue;
+import chat.dim.sqlite.message.CipherKeyTable;
 
 public class CipherKeyDatabase implements CipherKeyDBI {
 
-    private final CachePool<String, SymmetricKey> keyCache;
+    public static int MAX_KEYS = 4096;
 
-    public CipherKeyDatabase(DatabaseConnector sqliteConnector) {
+    private final CipherKeyTable cipherKeyTable;
+
+    // write-behind queue, null means writing synchronously
+    private final WriteBehindQueue writeBehind;
+
+    // (sender, receiver) => key, least recently used first, guarded by itself
+    private final Map<Direction, CachedKey> keyCache = new LinkedHashMap<>(256, 0.75f, true);
+    // reusable key for looking up the cache, guarded by keyCache
+    private final Direction probe = new Direction();
+
+    public CipherKeyDatabase(DatabaseConnector sqliteConnector, WriteBehindQueue queue) {
         super();
-        CacheManager man = CacheManager.getInstance();
-        keyCache = man.getPool("cipher_key");
+        cipherKeyTable = new CipherKeyTable(sqliteConnector);
+        writeBehind = queue;
+    }
+
+    public CipherKeyDatabase(DatabaseConnector sqliteConnector) {
+        this(sqliteConnector, null);
     }
 
     @Override
@@ -56,19 +73,136 @@ public class CipherKeyDatabase implements CipherKeyDBI {
             return PlainKey.getInstance();
         }
         long now = System.currentTimeMillis();
-        CachePair<SymmetricKey> pair = keyCache.fetch(sender + "->" + receiver, now);
-        SymmetricKey key = pair == null ? null : pair.value;
+        SymmetricKey key;
+        // 1. check memory cache
+        CachedKey cached = get(sender, receiver);
+        if (cached != null && now < cached.expired) {
+            key = cached.key;
+        } else {
+            // 2. check sqlite
+            key = cipherKeyTable.getCipherKey(sender, receiver, false);
+            if (key == null) {
+                // placeholder, wait to reload
+                put(sender, receiver, new CachedKey(null, now + 128 * 1000));
+            } else {
+                put(sender, receiver, new CachedKey(key, now + CipherKeyTable.EXPIRES));
+            }
+        }
         if (key == null && generate) {
             // generate and cache it
             key = SymmetricKey.generate(SymmetricAlgorithms.AES);
             assert key != null : "failed to generate symmetric key";
-            keyCache.update(sender + "->" + receiver, key, 7*24*3600*1000, now);
+            cacheCipherKey(sender, receiver, key);
         }
         return key;
     }
 
     @Override
     public void cacheCipherKey(ID sender, ID receiver, SymmetricKey key) {
-        keyCache.update(sender + "->" + receiver, key, 7*24*3600*1000, 0);
+        if (receiver.isBroadcast()) {
+            // no need to store plain key
+            return;
+        }
+        long now = System.currentTimeMillis();
+        // 1. update memory cache
+        Direction direction = put(sender, receiver, key, now + CipherKeyTable.EXPIRES);
+        // 2. update sqlite
+        if (writeBehind != null) {
+            writeBehind.append(direction, () -> cipherKeyTable.saveCipherKey(sender, receiver, key));
+            return;
+        }
+        cipherKeyTable.saveCipherKey(sender, receiver, key);
+    }
+
+    private CachedKey get(ID sender, ID receiver) {
+        synchronized (keyCache) {
+            return keyCache.get(probe.reset(sender, receiver));
+        }
+    }
+
+    /**
+     *  Update the cached key, reuse the holder when the key not changed
+     *
+     * @return cache key for the write-behind queue
+     */
+    private Direction put(ID sender, ID receiver, SymmetricKey key, long expired) {
+        synchronized (keyCache) {
+            CachedKey cached = keyCache.get(probe.reset(sender, receiver));
+            if (cached != null && cached.key == key) {
+                cached.expired = expired;
+                return cached.direction;
+            }
+            return put(sender, receiver, new CachedKey(key, expired));
+        }
+    }
+
+    private Direction put(ID sender, ID receiver, CachedKey cached) {
+        synchronized (keyCache) {
+            CachedKey old = keyCache.get(probe.reset(sender, receiver));
+            if (old == null) {
+                // new entry, the key object is kept by the map
+                cached.direction = new Direction().reset(sender, receiver);
+            } else {
+                cached.direction = old.direction;
+            }
+            keyCache.put(cached.direction, cached);
+            int overflow = keyCache.size() - MAX_KEYS;
+            if (overflow > 0) {
+                // remove least recently used keys
+                Iterator<Direction> iterator = keyCache.keySet().iterator();
+                while (overflow-- > 0 && iterator.hasNext()) {
+                    iterator.next();
+                    iterator.remove();
+                }
+            }
+            return cached.direction;
+        }
+    }
+
+    private static final class CachedKey {
+
+        final SymmetricKey key;
+        volatile long expired;  // renewed when saving the same key
+        Direction direction;
+
+        CachedKey(SymmetricKey key, long expired) {
+            this.key = key;
+            this.expired = expired;
+        }
+    }
+
+    /**
+     *  Cache key: (sender, receiver)
+     *  the one used for looking up is reset for each call,
+     *  the ones kept by the map are never changed after inserted.
+     */
+    private static final class Direction {
+
+        private ID sender;
+        private ID receiver;
+        private int hash;
+
+        Direction reset(ID from, ID to) {
+            sender = from;
+            receiver = to;
+            hash = from.hashCode() * 31 + to.hashCode();
+            return this;
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            } else if (other instanceof Direction) {
+                Direction that = (Direction) other;
+                return hash == that.hash && sender.equals(that.sender) && receiver.equals(that.receiver);
+            }
+            return false;
+        }
+
+        @Override
+        public int hashCode() {
+            return hash;
+        }
     }
 }
@@ -30,7 +30,6 @@
  */
 package chat.dim.database;
 
-import java.util.ArrayList;
 import java.util.List;
 
 import chat.dim.dbi.GroupDBI;
@@ -40,25 +39,37 @@ import chat.dim.mem.CachePair;
 import chat.dim.mem.CachePool;
 import chat.dim.protocol.ID;
 import chat.dim.sqlite.DatabaseConnector;
+import chat.dim.sqlite.WriteBehindQueue;
 import chat.dim.sqlite.account.GroupTable;
+import chat.dim.type.MemberList;
 
 public class GroupDatabase implements GroupDBI {
 
     private final GroupTable groupTable;
 
+    // write-behind queue, null means writing synchronously
+    private final WriteBehindQueue writeBehind;
+
     private final CachePool<ID, ID> founderCache;
     private final CachePool<ID, ID> ownerCache;
     private final CachePool<ID, List<ID>> membersCache;
     private final CachePool<ID, List<ID>> assistantsCache;
+    private final CachePool<ID, List<ID>> adminsCache;
 
-    public GroupDatabase(DatabaseConnector sqliteConnector) {
+    public GroupDatabase(DatabaseConnector sqliteConnector, WriteBehindQueue queue) {
         super();
         groupTable = new GroupTable(sqliteConnector);
+        writeBehind = queue;
         CacheManager man = CacheManager.getInstance();
         founderCache    = man.getPool("founder");
         ownerCache      = man.getPool("owner");
         membersCache    = man.getPool("members");
         assistantsCache = man.getPool("assistants");
+        adminsCache     = man.getPool("administrators");
+    }
+
+    public GroupDatabase(DatabaseConnector sqliteConnector) {
+        this(sqliteConnector, null);
     }
 
     //
@@ -164,7 +175,7 @@ public class GroupDatabase implements GroupDBI {
             } else {
                 if (holder.isAlive(now)) {
                     // cache not exists
-                    return new ArrayList<>();
+                    return MemberList.empty();
                 }
                 // cache expired, wait to load
                 holder.renewal(128 * 1000, now);
@@ -173,7 +184,10 @@ public class GroupDatabase implements GroupDBI {
             value = groupTable.getMembers(group);
             if (value == null) {
                 // placeholder
-                value = new ArrayList<>();
+                value = MemberList.empty();
+            } else {
+                // build indexed snapshot
+                value = MemberList.from(value);
             }
             // update memory cache
             membersCache.update(group, value, 3600 * 1000, now);
@@ -186,8 +200,13 @@ public class GroupDatabase implements GroupDBI {
     public boolean saveMembers(List<ID> members, ID group) {
         long now = System.currentTimeMillis();
         // 1. update memory cache
-        membersCache.update(group, members, 3600 * 1000, now);
+        MemberList snapshot = MemberList.from(members);
+        membersCache.update(group, snapshot, 3600 * 1000, now);
         // 2. update sqlite
+        if (writeBehind != null) {
+            writeBehind.append("members:" + group, () -> groupTable.saveMembers(snapshot, group));
+            return true;
+        }
         return groupTable.saveMembers(members, group);
     }
 
@@ -210,7 +229,7 @@ public class GroupDatabase implements GroupDBI {
             } else {
                 if (holder.isAlive(now)) {
                     // cache not exists
-                    return new ArrayList<>();
+                    return MemberList.empty();
                 }
                 // cache expired, wait to load
                 holder.renewal(128 * 1000, now);
@@ -219,7 +238,10 @@ public class GroupDatabase implements GroupDBI {
             value = groupTable.getAssistants(group);
             if (value == null) {
                 // placeholder
-                value = new ArrayList<>();
+                value = MemberList.empty();
+            } else {
+                // build indexed snapshot
+                value = MemberList.from(value);
             }
             // update memory cache
             assistantsCache.update(group, value, 3600 * 1000, now);
@@ -232,20 +254,67 @@ public class GroupDatabase implements GroupDBI {
     public boolean saveAssistants(List<ID> bots, ID group) {
         long now = System.currentTimeMillis();
         // 1. update memory cache
-        assistantsCache.update(group, bots, 3600 * 1000, now);
+        MemberList snapshot = MemberList.from(bots);
+        assistantsCache.update(group, snapshot, 3600 * 1000, now);
         // 2. update sqlite
+        if (writeBehind != null) {
+            writeBehind.append("assistants:" + group, () -> groupTable.saveAssistants(snapshot, group));
+            return true;
+        }
         return groupTable.saveAssistants(bots, group);
     }
 
     @Override
     public List<ID> getAdministrators(ID group) {
-        // TODO: load admins
-        return null;
+        long now = System.currentTimeMillis();
+        List<ID> value = null;
+        CacheHolder<List<ID>> holder = null;
+        // 1. check memory cache
+        CachePair<List<ID>> pair = adminsCache.fetch(group, now);
+        if (pair != null) {
+            value = pair.value;
+            holder = pair.holder;
+        }
+        if (value == null) {
+            // cache empty
+            if (holder == null) {
+                // cache not load yet, wait to load
+                adminsCache.update(group, null, 128 * 1000, now);
+            } else {
+                if (holder.isAlive(now)) {
+                    // cache not exists
+                    return MemberList.empty();
+                }
+                // cache expired, wait to load
+                holder.renewal(128 * 1000, now);
+            }
+            // 2. check sqlite
+            value = groupTable.getAdministrators(group);
+            if (value == null) {
+                // placeholder
+                value = MemberList.empty();
+            } else {
+                // build indexed snapshot
+                value = MemberList.from(value);
+            }
+            // update memory cache
+            adminsCache.update(group, value, 3600 * 1000, now);
+        }
+        // OK, return cached value
+        return value;
     }
 
     @Override
     public boolean saveAdministrators(List<ID> members, ID group) {
-        // TODO: save admins
-        return false;
+        long now = System.currentTimeMillis();
+        // 1. update memory cache
+        MemberList snapshot = MemberList.from(members);
+        adminsCache.update(group, snapshot, 3600 * 1000, now);
+        // 2. update sqlite
+        if (writeBehind != null) {
+            writeBehind.append("administrators:" + group, () -> groupTable.saveAdministrators(snapshot, group));
+            return true;
+        }
+        return groupTable.saveAdministrators(members, group);
     }
 }
@@ -38,21 +38,30 @@ import chat.dim.mem.CachePool;
 import chat.dim.protocol.ID;
 import chat.dim.protocol.Meta;
 import chat.dim.sqlite.DatabaseConnector;
+import chat.dim.sqlite.WriteBehindQueue;
 import chat.dim.sqlite.account.MetaTable;
 
 public class MetaDatabase implements MetaDBI {
 
     private final MetaTable metaTable;
 
+    // write-behind queue, null means writing synchronously
+    private final WriteBehindQueue writeBehind;
+
     private final CachePool<ID, Meta> metaCache;
 
-    public MetaDatabase(DatabaseConnector sqliteConnector) {
+    public MetaDatabase(DatabaseConnector sqliteConnector, WriteBehindQueue queue) {
         super();
         metaTable = new MetaTable(sqliteConnector);
+        writeBehind = queue;
         CacheManager man = CacheManager.getInstance();
         metaCache = man.getPool("meta");
     }
 
+    public MetaDatabase(DatabaseConnector sqliteConnector) {
+        this(sqliteConnector, null);
+    }
+
     //
     //  Meta DBI
     //
@@ -68,6 +77,10 @@ public class MetaDatabase implements MetaDBI {
         // 1. update memory cache
         metaCache.update(entity, meta, 36000 * 1000, 0);
         // 2. update sqlite
+        if (writeBehind != null) {
+            writeBehind.append("meta:" + entity, () -> metaTable.saveMeta(meta, entity));
+            return true;
+        }
         return metaTable.saveMeta(meta, entity);
     }
 
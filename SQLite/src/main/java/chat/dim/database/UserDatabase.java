@@ -41,6 +41,7 @@ import chat.dim.mem.CachePair;
 import chat.dim.mem.CachePool;
 import chat.dim.protocol.ID;
 import chat.dim.sqlite.DatabaseConnector;
+import chat.dim.sqlite.WriteBehindQueue;
 import chat.dim.sqlite.account.ContactTable;
 import chat.dim.sqlite.account.UserTable;
 
@@ -49,18 +50,26 @@ public class UserDatabase implements UserDBI, ContactDBI {
     private final UserTable userTable;
     private final ContactTable contactTable;
 
+    // write-behind queue, null means writing synchronously
+    private final WriteBehindQueue writeBehind;
+
     private final CachePool<String, List<ID>> dimCache;
     private final CachePool<ID, List<ID>> contactCache;
 
-    public UserDatabase(DatabaseConnector sqliteConnector) {
+    public UserDatabase(DatabaseConnector sqliteConnector, WriteBehindQueue queue) {
         super();
         userTable = new UserTable(sqliteConnector);
         contactTable = new ContactTable(sqliteConnector);
+        writeBehind = queue;
         CacheManager man = CacheManager.getInstance();
         dimCache = man.getPool("dim");
         contactCache = man.getPool("contacts");
     }
 
+    public UserDatabase(DatabaseConnector sqliteConnector) {
+        this(sqliteConnector, null);
+    }
+
     @Override
     public List<ID> getLocalUsers() {
         long now = System.currentTimeMillis();
@@ -103,6 +112,12 @@ public class UserDatabase implements UserDBI, ContactDBI {
         // 1. update memory cache
         dimCache.update("local_users", users, 36000 * 1000, 0);
         // 2. update sqlite
+        if (writeBehind != null) {
+            // the caller may modify the list before flushing
+            List<ID> snapshot = new ArrayList<>(users);
+            writeBehind.append("local_users", () -> userTable.saveLocalUsers(snapshot));
+            return true;
+        }
         return userTable.saveLocalUsers(users);
     }
 
@@ -148,6 +163,12 @@ public class UserDatabase implements UserDBI, ContactDBI {
         // 1. update memory cache
         contactCache.update(user, contacts, 36000 * 1000, 0);
         // 2. update sqlite
+        if (writeBehind != null) {
+            // the caller may modify the list before flushing
+            List<ID> snapshot = new ArrayList<>(contacts);
+            writeBehind.append("contacts:" + user, () -> contactTable.saveContacts(snapshot, user));
+            return true;
+        }
         return contactTable.saveContacts(contacts, user);
     }
 }
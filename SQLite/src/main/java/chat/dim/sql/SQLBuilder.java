@@ -30,6 +30,7 @@
  */
 package chat.dim.sql;
 
+import java.util.List;
 import java.util.Map;
 
 public final class SQLBuilder {
@@ -88,12 +89,16 @@ public final class SQLBuilder {
         append(clause);
     }
 
-    private void appendWhere(SQLConditions conditions) {
+    private void appendWhere(SQLConditions conditions, List<Object> params) {
         if (conditions == null) {
             return;
         }
         append(" WHERE ");
-        conditions.appendEscapeValue(sb);
+        if (params == null) {
+            conditions.appendEscapeValue(sb);
+        } else {
+            conditions.appendPlaceholder(sb, params);
+        }
     }
 
     //
@@ -158,6 +163,21 @@ public final class SQLBuilder {
         return builder.toString();
     }
 
+    //
+    //  INSERT INTO table (columns) VALUES (?, ...);
+    //
+    public static String buildInsert(String table, String[] columns) {
+        SQLBuilder builder = new SQLBuilder(INSERT);
+        builder.append(" INTO ");
+        builder.append(table);
+        builder.append("(");
+        builder.appendStringList(columns);
+        builder.append(") VALUES (");
+        SQLValues.appendPlaceholderList(builder.sb, columns.length);
+        builder.append(")");
+        return builder.toString();
+    }
+
     //
     //  SELECT DISTINCT columns FROM tables WHERE conditions
     //          GROUP BY ...
@@ -169,6 +189,18 @@ public final class SQLBuilder {
                                      String table, SQLConditions conditions,
                                      String groupBy, String having, String orderBy,
                                      int limit, int offset) {
+        return buildSelect(distinct, columns, table, conditions,
+                groupBy, having, orderBy, limit, offset, null);
+    }
+
+    /**
+     *  Build SELECT with '?' placeholders when 'params' not null,
+     *  the values of conditions will be appended into 'params'
+     */
+    public static String buildSelect(boolean distinct, String[] columns,
+                                     String table, SQLConditions conditions,
+                                     String groupBy, String having, String orderBy,
+                                     int limit, int offset, List<Object> params) {
         SQLBuilder builder = new SQLBuilder(SELECT);
         if (distinct) {
             builder.append(" DISTINCT");
@@ -176,7 +208,7 @@ public final class SQLBuilder {
         builder.appendColumns(columns);
         builder.append(" FROM ");
         builder.append(table);
-        builder.appendWhere(conditions);
+        builder.appendWhere(conditions, params);
         builder.appendClause(" GROUP BY ", groupBy);
         builder.appendClause(" HAVING ", having);
         builder.appendClause(" ORDER BY ", orderBy);
@@ -191,12 +223,24 @@ public final class SQLBuilder {
     //  UPDATE table SET name=value WHERE conditions
     //
     public static String buildUpdate(String table, Map<String, Object> values, SQLConditions conditions) {
+        return buildUpdate(table, values, conditions, null);
+    }
+
+    //
+    //  UPDATE table SET name=? WHERE conditions
+    //
+    public static String buildUpdate(String table, Map<String, Object> values, SQLConditions conditions,
+                                     List<Object> params) {
         SQLBuilder builder = new SQLBuilder(UPDATE);
         builder.append(" ");
         builder.append(table);
         builder.append(" SET ");
-        builder.appendValues(SQLValues.from(values));
-        builder.appendWhere(conditions);
+        if (params == null) {
+            builder.appendValues(SQLValues.from(values));
+        } else {
+            SQLValues.from(values).appendPlaceholders(builder.sb, params);
+        }
+        builder.appendWhere(conditions, params);
         return builder.toString();
     }
 
@@ -204,10 +248,17 @@ public final class SQLBuilder {
     //  DELETE FROM table WHERE conditions
     //
     public static String buildDelete(String table, SQLConditions conditions) {
+        return buildDelete(table, conditions, null);
+    }
+
+    //
+    //  DELETE FROM table WHERE name=?
+    //
+    public static String buildDelete(String table, SQLConditions conditions, List<Object> params) {
         SQLBuilder builder = new SQLBuilder(DELETE);
         builder.append(" FROM ");
         builder.append(table);
-        builder.appendWhere(conditions);
+        builder.appendWhere(conditions, params);
         return builder.toString();
     }
 }
@@ -30,6 +30,8 @@
  */
 package chat.dim.sql;
 
+import java.util.List;
+
 public final class SQLConditions {
 
     private Condition condition = null;
@@ -40,6 +42,12 @@ public final class SQLConditions {
         }
     }
 
+    public void appendPlaceholder(StringBuilder sb, List<Object> params) {
+        if (condition != null) {
+            condition.appendPlaceholder(sb, params);
+        }
+    }
+
     public void addCondition(Relation relation, String name, String operator, Object value) {
         Condition newCondition = createCondition(name, operator, value);
         addCondition(relation, newCondition);
@@ -67,6 +75,14 @@ public final class SQLConditions {
     public interface Condition {
 
         void appendEscapeValue(StringBuilder sb);
+
+        /**
+         *  Append with '?' instead of the value
+         *
+         * @param sb     - SQL
+         * @param params - values for placeholders
+         */
+        void appendPlaceholder(StringBuilder sb, List<Object> params);
     }
 
     static final class CompareCondition implements Condition {
@@ -86,6 +102,14 @@ public final class SQLConditions {
             sb.append(operator);
             SQLValues.appendEscapeValue(sb, value);
         }
+
+        @Override
+        public void appendPlaceholder(StringBuilder sb, List<Object> params) {
+            sb.append(name);
+            sb.append(operator);
+            sb.append('?');
+            params.add(value);
+        }
     }
 
     static final class RelatedCondition implements Condition {
@@ -109,9 +133,17 @@ public final class SQLConditions {
             }
         }
 
-        @Override
-        public void appendEscapeValue(StringBuilder sb) {
-            appendEscapeValue(sb, condition1);
+        private static void appendPlaceholder(StringBuilder sb, List<Object> params, Condition condition) {
+            if (condition instanceof RelatedCondition) {
+                sb.append("(");
+                condition.appendPlaceholder(sb, params);
+                sb.append(")");
+            } else {
+                condition.appendPlaceholder(sb, params);
+            }
+        }
+
+        private void appendRelation(StringBuilder sb) {
             switch (relation) {
                 case AND:
                     sb.append(" AND ");
@@ -122,8 +154,21 @@ public final class SQLConditions {
                 default:
                     throw new AssertionError("relation operator error: " + relation);
             }
+        }
+
+        @Override
+        public void appendEscapeValue(StringBuilder sb) {
+            appendEscapeValue(sb, condition1);
+            appendRelation(sb);
             appendEscapeValue(sb, condition2);
         }
+
+        @Override
+        public void appendPlaceholder(StringBuilder sb, List<Object> params) {
+            appendPlaceholder(sb, params, condition1);
+            appendRelation(sb);
+            appendPlaceholder(sb, params, condition2);
+        }
     }
 
     public enum Relation {
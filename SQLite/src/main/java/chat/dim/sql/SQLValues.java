@@ -71,6 +71,17 @@ public final class SQLValues {
         }
     }
 
+    void appendPlaceholders(StringBuilder sb, List<Object> params) {
+        for (Pair<String, Object> pair : valueList) {
+            sb.append(pair.first);
+            sb.append("=?,");
+            params.add(pair.second);
+        }
+        if (valueList.size() > 0) {
+            sb.deleteCharAt(sb.length() - 1);  // remove last ','
+        }
+    }
+
     static void appendEscapeValue(StringBuilder sb, Object value) {
         // TODO: other types?
         if (value instanceof Number) {
@@ -110,6 +121,15 @@ public final class SQLValues {
         }
     }
 
+    static void appendPlaceholderList(StringBuilder sb, int count) {
+        for (int index = 0; index < count; ++index) {
+            sb.append("?,");
+        }
+        if (count > 0) {
+            sb.deleteCharAt(sb.length() - 1);  // remove last ','
+        }
+    }
+
     static void appendStringList(StringBuilder sb, String[] array) {
         for (String item : array) {
             sb.append(item);
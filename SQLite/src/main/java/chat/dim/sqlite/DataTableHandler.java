@@ -31,8 +31,12 @@
 package chat.dim.sqlite;
 
 import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.HashSet;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
 
 import chat.dim.sql.SQLBuilder;
 import chat.dim.sql.SQLConditions;
@@ -57,11 +61,23 @@ public abstract class DataTableHandler<T> extends DatabaseHandler<T> {
         }
     }
 
+    public boolean createIndex(String name, String table, String[] fields) {
+        // CREATE INDEX name ON table (fields);
+        String sql = SQLBuilder.buildCreateIndex(name, table, fields);
+        try {
+            executeUpdate(sql);
+            return true;
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
     public int insert(String table, String[] columns, Object[] values) {
-        // INSERT INTO table (columns) VALUES (values);
-        String sql = SQLBuilder.buildInsert(table, columns, values);
+        // INSERT INTO table (columns) VALUES (?, ...);
+        String sql = SQLBuilder.buildInsert(table, columns);
         try {
-            return executeUpdate(sql);
+            return executeUpdate(sql, values);
         } catch (SQLException e) {
             e.printStackTrace();
             return -1;
@@ -76,11 +92,12 @@ public abstract class DataTableHandler<T> extends DatabaseHandler<T> {
 
     public List<T> select(String table, String[] columns, SQLConditions conditions,
                           String groupBy, String having, String orderBy, int limit, int offset) {
-        // SELECT DISTINCT columns FROM tables WHERE conditions ...
+        // SELECT DISTINCT columns FROM tables WHERE name=? ...
+        List<Object> params = new ArrayList<>();
         String sql = SQLBuilder.buildSelect(false, columns, table, conditions,
-                groupBy, having, orderBy, limit, offset);
+                groupBy, having, orderBy, limit, offset, params);
         try {
-            return executeQuery(sql, getDataRowExtractor());
+            return executeQuery(sql, params.toArray(), getDataRowExtractor());
         } catch (SQLException e) {
             e.printStackTrace();
             return null;
@@ -88,10 +105,11 @@ public abstract class DataTableHandler<T> extends DatabaseHandler<T> {
     }
 
     public int update(String table, Map<String, Object> values, SQLConditions conditions) {
-        // UPDATE table SET name=value WHERE conditions
-        String sql = SQLBuilder.buildUpdate(table, values, conditions);
+        // UPDATE table SET name=? WHERE name=?
+        List<Object> params = new ArrayList<>();
+        String sql = SQLBuilder.buildUpdate(table, values, conditions, params);
         try {
-            return executeUpdate(sql);
+            return executeUpdate(sql, params.toArray());
         } catch (SQLException e) {
             e.printStackTrace();
             return -1;
@@ -99,13 +117,83 @@ public abstract class DataTableHandler<T> extends DatabaseHandler<T> {
     }
 
     public int delete(String table, SQLConditions conditions) {
-        // DELETE FROM table WHERE conditions
-        String sql = SQLBuilder.buildDelete(table, conditions);
+        // DELETE FROM table WHERE name=?
+        List<Object> params = new ArrayList<>();
+        String sql = SQLBuilder.buildDelete(table, conditions, params);
         try {
-            return executeUpdate(sql);
+            return executeUpdate(sql, params.toArray());
         } catch (SQLException e) {
             e.printStackTrace();
             return -1;
         }
     }
+
+    /**
+     *  Delete & insert rows in one transaction (JDBC batch)
+     *
+     * @param table   - table name
+     * @param keys    - columns for locating the deleting rows
+     * @param removed - values of keys for each deleting row
+     * @param columns - columns for inserting
+     * @param added   - values of columns for each inserting row
+     * @return false on DB error (nothing changed)
+     */
+    public boolean batchWrite(String table, String[] keys, List<Object[]> removed,
+                              String[] columns, List<Object[]> added) {
+        if (removed.isEmpty() && added.isEmpty()) {
+            // nothing changed
+            return true;
+        }
+        try {
+            executeTransaction(writer -> {
+                batchDelete(writer, table, keys, removed);
+                batchInsert(writer, table, columns, added);
+            });
+            return true;
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return false;
+        }
+    }
+
+    // DELETE FROM table WHERE key1=? AND key2=?
+    protected static void batchDelete(PreparedConnection writer, String table, String[] keys,
+                                      List<Object[]> rows) throws SQLException {
+        if (rows.isEmpty()) {
+            return;
+        }
+        SQLConditions conditions = new SQLConditions();
+        for (String name : keys) {
+            conditions.addCondition(SQLConditions.Relation.AND, name, "=", null);
+        }
+        String sql = SQLBuilder.buildDelete(table, conditions, new ArrayList<>());
+        writer.executeBatch(sql, rows);
+    }
+
+    // INSERT INTO table (columns) VALUES (?, ...)
+    protected static void batchInsert(PreparedConnection writer, String table, String[] columns,
+                                      List<Object[]> rows) throws SQLException {
+        if (rows.isEmpty()) {
+            return;
+        }
+        String sql = SQLBuilder.buildInsert(table, columns);
+        writer.executeBatch(sql, rows);
+    }
+
+    /**
+     *  Get items in array but not in others (set-based, keeps the order)
+     */
+    protected static <E> List<E> difference(Collection<E> array, Collection<E> others) {
+        Set<E> exists = others instanceof Set ? (Set<E>) others : new HashSet<>(others);
+        Set<E> checked = new HashSet<>();
+        List<E> results = new ArrayList<>();
+        for (E item : array) {
+            if (exists.contains(item) || !checked.add(item)) {
+                // exists, or duplicated
+                continue;
+            }
+            results.add(item);
+        }
+        return results;
+    }
 }
@@ -33,19 +33,48 @@ package chat.dim.sqlite;
 import java.sql.Connection;
 import java.sql.DriverManager;
 import java.sql.SQLException;
+import java.util.concurrent.ArrayBlockingQueue;
+import java.util.concurrent.BlockingQueue;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+import org.sqlite.SQLiteConfig;
 
 import chat.dim.filesys.Paths;
 
+/**
+ *  SQLite Connector
+ *  ~~~~~~~~~~~~~~~~
+ *
+ *  One writer connection (WAL mode) and a small pool of read-only
+ *  connections, so the tables can serve concurrent reads.
+ */
 public class DatabaseConnector {
 
+    public static int MAX_READERS = 4;
+
+    public static int BUSY_TIMEOUT = 3000;  // milliseconds
+
     private final String dbFilePath;
-    private Connection connection;
+    private final int maxReaders;
 
-    public DatabaseConnector(String sqliteFilePath) {
+    private PreparedConnection writer;
+
+    private final BlockingQueue<PreparedConnection> idleReaders;
+    private final AtomicInteger readerCount = new AtomicInteger(0);
+
+    public DatabaseConnector(String sqliteFilePath, int readers) {
         super();
+        assert readers > 0 : "readers count error: " + readers;
         dbFilePath = sqliteFilePath;
+        maxReaders = readers;
         // lazy load
-        connection = null;
+        writer = null;
+        idleReaders = new ArrayBlockingQueue<>(readers);
+    }
+
+    public DatabaseConnector(String sqliteFilePath) {
+        this(sqliteFilePath, MAX_READERS);
     }
 
     @Override
@@ -55,24 +84,108 @@ public class DatabaseConnector {
     }
 
     public void destroy() throws SQLException {
-        Connection conn = connection;
+        PreparedConnection reader = idleReaders.poll();
+        while (reader != null) {
+            readerCount.decrementAndGet();
+            reader.close();
+            reader = idleReaders.poll();
+        }
+        PreparedConnection conn;
+        synchronized (this) {
+            conn = writer;
+            writer = null;
+        }
         if (conn != null) {
-            connection = null;
             conn.close();
         }
     }
 
+    /**
+     *  Get the writer connection
+     */
     public Connection getConnection() throws SQLException {
-        Connection conn = connection;
+        return getWriter().getConnection();
+    }
+
+    /**
+     *  Get the writer connection with prepared statements,
+     *  the caller should synchronize on it while using.
+     */
+    public synchronized PreparedConnection getWriter() throws SQLException {
+        PreparedConnection conn = writer;
         if (conn == null) {
             if (!Paths.exists(dbFilePath)) {
                 // make sure parent directory exists
                 String dir = Paths.parent(dbFilePath);
                 Paths.mkdirs(dir);
             }
-            conn = DriverManager.getConnection("jdbc:sqlite:" + dbFilePath);
-            connection = conn;
+            SQLiteConfig config = new SQLiteConfig();
+            config.setJournalMode(SQLiteConfig.JournalMode.WAL);
+            config.setBusyTimeout(BUSY_TIMEOUT);
+            conn = new PreparedConnection(openConnection(config));
+            writer = conn;
         }
         return conn;
     }
+
+    /**
+     *  Borrow a read-only connection, must return it after used
+     *
+     * @return read-only connection
+     * @throws SQLException on DB error
+     */
+    public PreparedConnection borrowReader() throws SQLException {
+        PreparedConnection reader;
+        while (true) {
+            reader = idleReaders.poll();
+            if (reader != null) {
+                return reader;
+            }
+            // try to open a new one
+            if (readerCount.incrementAndGet() <= maxReaders) {
+                try {
+                    return openReader();
+                } catch (SQLException e) {
+                    readerCount.decrementAndGet();
+                    throw e;
+                }
+            }
+            readerCount.decrementAndGet();
+            // all readers are busy, wait for one
+            try {
+                reader = idleReaders.poll(100, TimeUnit.MILLISECONDS);
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new SQLException("interrupted while waiting for reader: " + dbFilePath, e);
+            }
+            if (reader != null) {
+                return reader;
+            }
+        }
+    }
+
+    private PreparedConnection openReader() throws SQLException {
+        // make sure the database file exists (and in WAL mode)
+        getWriter();
+        SQLiteConfig config = new SQLiteConfig();
+        config.setReadOnly(true);
+        config.setBusyTimeout(BUSY_TIMEOUT);
+        return new PreparedConnection(openConnection(config));
+    }
+
+    public void returnReader(PreparedConnection reader) {
+        if (!idleReaders.offer(reader)) {
+            // should not happen
+            readerCount.decrementAndGet();
+            try {
+                reader.close();
+            } catch (SQLException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    private Connection openConnection(SQLiteConfig config) throws SQLException {
+        return DriverManager.getConnection("jdbc:sqlite:" + dbFilePath, config.toProperties());
+    }
 }
@@ -126,6 +126,56 @@ public class DatabaseHandler<T> {
         }
     }
 
+    //
+    //  Prepared Statements
+    //
+
+    /**
+     *  Query (SELECT) with a read-only connection
+     *
+     * @param sql       - SQL with '?' placeholders
+     * @param params    - values for placeholders
+     * @param extractor - result extractor
+     * @return rows
+     * @throws SQLException on DB error
+     */
+    public List<T> executeQuery(String sql, Object[] params, DataRowExtractor<T> extractor) throws SQLException {
+        PreparedConnection reader = connector.borrowReader();
+        try {
+            return reader.executeQuery(sql, params, extractor);
+        } finally {
+            connector.returnReader(reader);
+        }
+    }
+
+    /**
+     *  Update (INSERT, UPDATE, DELETE) with the writer connection
+     *
+     * @param sql    - SQL with '?' placeholders
+     * @param params - values for placeholders
+     * @return result
+     * @throws SQLException on DB error
+     */
+    public int executeUpdate(String sql, Object[] params) throws SQLException {
+        PreparedConnection writer = connector.getWriter();
+        synchronized (writer) {
+            return writer.executeUpdate(sql, params);
+        }
+    }
+
+    /**
+     *  Run updates in one transaction with the writer connection
+     *
+     * @param transaction - updates
+     * @throws SQLException on DB error (all updates rolled back)
+     */
+    public void executeTransaction(PreparedConnection.Transaction transaction) throws SQLException {
+        PreparedConnection writer = connector.getWriter();
+        synchronized (writer) {
+            writer.executeTransaction(transaction);
+        }
+    }
+
     static {
         try {
             Class.forName("org.sqlite.JDBC");
@@ -0,0 +1,244 @@
+/* license: https://mit-license.org
+ *
+ *  DIMP : Decentralized Instant Messaging Protocol
+ *
+ *                                Written in 2026 by Moky <albert.moky@gmail.com>
+ *
+ * ==============================================================================
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2026 Albert Moky
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * ==============================================================================
+ */
+package chat.dim.sqlite;
+
+import java.sql.Connection;
+import java.sql.PreparedStatement;
+import java.sql.ResultSet;
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.sql.Types;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ *  Connection with Prepared Statements
+ *  ~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~~
+ *
+ *  Statements are cached by SQL shape (with '?' placeholders),
+ *  and the values are bound as parameters instead of escaping.
+ *
+ *  NOTICE: not thread-safe, one thread should hold it at a time.
+ */
+public final class PreparedConnection {
+
+    public static int MAX_STATEMENTS = 64;
+
+    private final Connection connection;
+    private final Map<String, PreparedStatement> statements;
+
+    public PreparedConnection(Connection conn) {
+        super();
+        connection = conn;
+        // least recently used statements will be closed
+        statements = new LinkedHashMap<>(16, 0.75f, true);
+    }
+
+    public Connection getConnection() {
+        return connection;
+    }
+
+    public void close() throws SQLException {
+        Iterator<PreparedStatement> iterator = statements.values().iterator();
+        while (iterator.hasNext()) {
+            closeStatement(iterator.next());
+            iterator.remove();
+        }
+        connection.close();
+    }
+
+    private static void closeStatement(PreparedStatement statement) {
+        try {
+            statement.close();
+        } catch (SQLException e) {
+            e.printStackTrace();
+        }
+    }
+
+    /**
+     *  Get prepared statement for SQL
+     *
+     * @param sql - SQL with '?' placeholders
+     * @return cached statement
+     * @throws SQLException on DB error
+     */
+    public PreparedStatement prepare(String sql) throws SQLException {
+        PreparedStatement statement = statements.get(sql);
+        if (statement == null || statement.isClosed()) {
+            statement = connection.prepareStatement(sql);
+            statements.put(sql, statement);
+            if (statements.size() > MAX_STATEMENTS) {
+                // remove the eldest
+                Iterator<PreparedStatement> iterator = statements.values().iterator();
+                closeStatement(iterator.next());
+                iterator.remove();
+            }
+        } else {
+            // drop the values left by the previous (failed) call
+            statement.clearParameters();
+            statement.clearBatch();
+        }
+        return statement;
+    }
+
+    private static void bind(PreparedStatement statement, Object[] params) throws SQLException {
+        if (params == null) {
+            return;
+        }
+        Object value;
+        for (int index = 0; index < params.length; ++index) {
+            value = params[index];
+            if (value == null) {
+                statement.setNull(index + 1, Types.NULL);
+            } else if (value instanceof Number || value instanceof String || value instanceof byte[]) {
+                statement.setObject(index + 1, value);
+            } else if (value instanceof Boolean) {
+                statement.setInt(index + 1, (Boolean) value ? 1 : 0);
+            } else {
+                statement.setString(index + 1, value.toString());
+            }
+        }
+    }
+
+    /**
+     *  Query (SELECT)
+     *
+     * @param sql       - SQL with '?' placeholders
+     * @param params    - values for placeholders
+     * @param extractor - result extractor
+     * @return rows
+     * @throws SQLException on DB error
+     */
+    public <T> List<T> executeQuery(String sql, Object[] params, DataRowExtractor<T> extractor) throws SQLException {
+        PreparedStatement statement = prepare(sql);
+        bind(statement, params);
+        List<T> rows = new ArrayList<>();
+        try (ResultSet resultSet = statement.executeQuery()) {
+            while (resultSet.next()) {
+                rows.add(extractor.extractRow(resultSet, resultSet.getRow()));
+            }
+        }
+        return rows;
+    }
+
+    /**
+     *  Update (INSERT, UPDATE, DELETE)
+     *
+     * @param sql    - SQL with '?' placeholders
+     * @param params - values for placeholders
+     * @return result
+     * @throws SQLException on DB error
+     */
+    public int executeUpdate(String sql, Object[] params) throws SQLException {
+        PreparedStatement statement = prepare(sql);
+        bind(statement, params);
+        return statement.executeUpdate();
+    }
+
+    /**
+     *  Batch Update (INSERT, UPDATE, DELETE)
+     *
+     * @param sql  - SQL with '?' placeholders
+     * @param rows - values for each statement
+     * @return results
+     * @throws SQLException on DB error
+     */
+    public int[] executeBatch(String sql, List<Object[]> rows) throws SQLException {
+        PreparedStatement statement = prepare(sql);
+        try {
+            for (Object[] params : rows) {
+                bind(statement, params);
+                statement.addBatch();
+            }
+            return statement.executeBatch();
+        } finally {
+            // don't leave rows on the cached statement
+            statement.clearBatch();
+        }
+    }
+
+    /**
+     *  Run all updates in one transaction
+     *  (nested one joins the outer with a savepoint)
+     *
+     * @param transaction - updates
+     * @throws SQLException on DB error (all updates rolled back)
+     */
+    public void executeTransaction(Transaction transaction) throws SQLException {
+        boolean autoCommit = connection.getAutoCommit();
+        if (!autoCommit) {
+            // already in a transaction, join it,
+            // and undo the updates of this one only when failed
+            Savepoint savepoint = connection.setSavepoint();
+            try {
+                transaction.run(this);
+            } catch (SQLException | RuntimeException e) {
+                connection.rollback(savepoint);
+                throw e;
+            }
+            connection.releaseSavepoint(savepoint);
+            return;
+        }
+        connection.setAutoCommit(false);
+        try {
+            transaction.run(this);
+            connection.commit();
+        } catch (SQLException | RuntimeException e) {
+            connection.rollback();
+            throw e;
+        } finally {
+            connection.setAutoCommit(autoCommit);
+        }
+    }
+
+    /**
+     *  Set a savepoint in current transaction
+     */
+    public Savepoint setSavepoint() throws SQLException {
+        return connection.setSavepoint();
+    }
+
+    public void rollback(Savepoint savepoint) throws SQLException {
+        connection.rollback(savepoint);
+    }
+
+    public void releaseSavepoint(Savepoint savepoint) throws SQLException {
+        connection.releaseSavepoint(savepoint);
+    }
+
+    public interface Transaction {
+
+        void run(PreparedConnection writer) throws SQLException;
+    }
+}
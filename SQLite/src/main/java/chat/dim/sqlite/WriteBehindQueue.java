@@ -0,0 +1,400 @@
+/* license: https://mit-license.org
+ *
+ *  DIM-SDK : Decentralized Instant Messaging Software Development Kit
+ *
+ *                                Written in 2026 by Moky <albert.moky@gmail.com>
+ *
+ * ==============================================================================
+ * The MIT License (MIT)
+ *
+ * Copyright (c) 2026 Albert Moky
+ *
+ * Permission is hereby granted, free of charge, to any person obtaining a copy
+ * of this software and associated documentation files (the "Software"), to deal
+ * in the Software without restriction, including without limitation the rights
+ * to use, copy, modify, merge, publish, distribute, sublicense, and/or sell
+ * copies of the Software, and to permit persons to whom the Software is
+ * furnished to do so, subject to the following conditions:
+ *
+ * The above copyright notice and this permission notice shall be included in all
+ * copies or substantial portions of the Software.
+ *
+ * THE SOFTWARE IS PROVIDED "AS IS", WITHOUT WARRANTY OF ANY KIND, EXPRESS OR
+ * IMPLIED, INCLUDING BUT NOT LIMITED TO THE WARRANTIES OF MERCHANTABILITY,
+ * FITNESS FOR A PARTICULAR PURPOSE AND NONINFRINGEMENT. IN NO EVENT SHALL THE
+ * AUTHORS OR COPYRIGHT HOLDERS BE LIABLE FOR ANY CLAIM, DAMAGES OR OTHER
+ * LIABILITY, WHETHER IN AN ACTION OF CONTRACT, TORT OR OTHERWISE, ARISING FROM,
+ * OUT OF OR IN CONNECTION WITH THE SOFTWARE OR THE USE OR OTHER DEALINGS IN THE
+ * SOFTWARE.
+ * ==============================================================================
+ */
+package chat.dim.sqlite;
+
+import java.sql.SQLException;
+import java.sql.Savepoint;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+
+import chat.dim.log.Log;
+import chat.dim.skywalker.Runner;
+
+/**
+ *  Write-Behind Queue
+ *  ~~~~~~~~~~~~~~~~~~
+ *
+ *  Pending writes are coalesced by key (the latest one wins),
+ *  and flushed by a background thread in one transaction.
+ *  Failed tasks are re-queued (unless a newer one with same key is waiting)
+ *  until MAX_RETRIES reached.
+ *
+ *  Usage:
+ *      1. update memory cache first;
+ *      2. append a task to save the record into database.
+ */
+public class WriteBehindQueue extends Runner {
+
+    public static long FLUSH_INTERVAL = 1000;  // milliseconds
+    public static int BATCH_SIZE = 512;
+    public static int MAX_RETRIES = 3;
+
+    public interface Task {
+
+        /**
+         *  Save record into database
+         *
+         * @return false on DB error
+         */
+        boolean save();
+    }
+
+    private final DatabaseConnector connector;
+
+    // pending tasks, guarded by itself
+    private final Map<Object, Task> pending = new LinkedHashMap<>();
+    private long firstTime = 0;  // append time of the oldest pending task
+    private final Map<Object, Integer> retries = new HashMap<>();  // key => failed times
+
+    // flush by the background thread or the caller, one at a time
+    private final Object flushLock = new Object();
+
+    private Thread thread = null;
+    private Thread hook = null;
+
+    // metrics
+    private long appendCount = 0;
+    private long coalescedCount = 0;
+    private long flushCount = 0;
+    private long savedCount = 0;
+    private long retriedCount = 0;
+    private long failedCount = 0;   // given up
+    private long lastFlushLatency = 0;  // milliseconds
+    private long maxFlushLatency = 0;
+    private long totalFlushLatency = 0;
+
+    public WriteBehindQueue(DatabaseConnector sqliteConnector) {
+        super(Runner.INTERVAL_SLOW);
+        connector = sqliteConnector;
+    }
+
+    /**
+     *  Append a task to save a record
+     *
+     * @param key  - record key for coalescing; null means never coalesce
+     * @param task - save task
+     */
+    public void append(Object key, Task task) {
+        if (key == null) {
+            key = new Object();
+        }
+        synchronized (pending) {
+            if (pending.isEmpty()) {
+                firstTime = System.currentTimeMillis();
+            }
+            if (pending.put(key, task) != null) {
+                // replace the older one
+                ++coalescedCount;
+            }
+            ++appendCount;
+            if (pending.size() >= BATCH_SIZE) {
+                // wake up the writer
+                pending.notifyAll();
+            }
+        }
+    }
+
+    /**
+     *  Write all pending tasks into database now
+     */
+    public void flush() {
+        synchronized (flushLock) {
+            write(drain());
+        }
+    }
+
+    private Map<Object, Task> drain() {
+        Map<Object, Task> tasks;
+        synchronized (pending) {
+            tasks = new LinkedHashMap<>(pending);
+            pending.clear();
+        }
+        return tasks;
+    }
+
+    private boolean isDue() {
+        synchronized (pending) {
+            int count = pending.size();
+            if (count == 0) {
+                return false;
+            }
+            return count >= BATCH_SIZE || System.currentTimeMillis() - firstTime >= FLUSH_INTERVAL;
+        }
+    }
+
+    private void write(Map<Object, Task> tasks) {
+        if (tasks.isEmpty()) {
+            return;
+        }
+        long start = System.currentTimeMillis();
+        Set<Object> failed;
+        try {
+            PreparedConnection writer = connector.getWriter();
+            synchronized (writer) {
+                failed = run(writer, tasks);
+            }
+        } catch (SQLException e) {
+            Log.error("failed to write " + tasks.size() + " record(s): " + e);
+            // transaction rolled back
+            failed = new LinkedHashSet<>(tasks.keySet());
+        }
+        long latency = System.currentTimeMillis() - start;
+        List<Object> abandoned = new ArrayList<>();
+        synchronized (pending) {
+            ++flushCount;
+            savedCount += tasks.size() - failed.size();
+            lastFlushLatency = latency;
+            totalFlushLatency += latency;
+            if (latency > maxFlushLatency) {
+                maxFlushLatency = latency;
+            }
+            for (Object key : tasks.keySet()) {
+                if (!failed.contains(key)) {
+                    retries.remove(key);
+                }
+            }
+            // re-queue failed tasks
+            for (Object key : failed) {
+                if (pending.containsKey(key)) {
+                    // a newer task with same key is waiting
+                    retries.remove(key);
+                    continue;
+                }
+                int times = retries.getOrDefault(key, 0) + 1;
+                if (times > MAX_RETRIES) {
+                    retries.remove(key);
+                    abandoned.add(key);
+                    ++failedCount;
+                    continue;
+                }
+                retries.put(key, times);
+                if (pending.isEmpty()) {
+                    firstTime = System.currentTimeMillis();
+                }
+                pending.put(key, tasks.get(key));
+                ++retriedCount;
+            }
+        }
+        if (failed.size() > 0) {
+            Log.warning("write-behind flushed " + tasks.size() + " record(s), failed: " + failed.size());
+        }
+        if (abandoned.size() > 0) {
+            Log.error("write-behind gave up " + abandoned.size() + " record(s): " + abandoned);
+        }
+    }
+
+    private static Set<Object> run(PreparedConnection writer, Map<Object, Task> tasks) throws SQLException {
+        Set<Object> failed = new LinkedHashSet<>();
+        writer.executeTransaction(conn -> {
+            Savepoint savepoint;
+            boolean ok;
+            for (Map.Entry<Object, Task> item : tasks.entrySet()) {
+                // each task has its own savepoint, so a failed one leaves no partial rows
+                savepoint = conn.setSavepoint();
+                try {
+                    ok = item.getValue().save();
+                } catch (RuntimeException e) {
+                    Log.error("write-behind task error: " + item.getKey() + ", " + e);
+                    ok = false;
+                }
+                if (ok) {
+                    conn.releaseSavepoint(savepoint);
+                } else {
+                    conn.rollback(savepoint);
+                    failed.add(item.getKey());
+                }
+            }
+        });
+        return failed;
+    }
+
+    //
+    //  Metrics
+    //
+
+    /**
+     *  Get queue depth
+     */
+    public int getPendingCount() {
+        synchronized (pending) {
+            return pending.size();
+        }
+    }
+
+    public long getAppendCount() {
+        synchronized (pending) {
+            return appendCount;
+        }
+    }
+
+    public long getCoalescedCount() {
+        synchronized (pending) {
+            return coalescedCount;
+        }
+    }
+
+    public long getFlushCount() {
+        synchronized (pending) {
+            return flushCount;
+        }
+    }
+
+    public long getSavedCount() {
+        synchronized (pending) {
+            return savedCount;
+        }
+    }
+
+    public long getRetriedCount() {
+        synchronized (pending) {
+            return retriedCount;
+        }
+    }
+
+    /**
+     *  Get count of the tasks given up after retries
+     */
+    public long getFailedCount() {
+        synchronized (pending) {
+            return failedCount;
+        }
+    }
+
+    /**
+     *  Get latency of the last flush (milliseconds)
+     */
+    public long getLastFlushLatency() {
+        synchronized (pending) {
+            return lastFlushLatency;
+        }
+    }
+
+    public long getMaxFlushLatency() {
+        synchronized (pending) {
+            return maxFlushLatency;
+        }
+    }
+
+    public long getAverageFlushLatency() {
+        synchronized (pending) {
+            return flushCount == 0 ? 0 : totalFlushLatency / flushCount;
+        }
+    }
+
+    @Override
+    public String toString() {
+        synchronized (pending) {
+            return "<" + getClass().getSimpleName() + " pending=" + pending.size()
+                    + " appended=" + appendCount + " coalesced=" + coalescedCount
+                    + " saved=" + savedCount + " retried=" + retriedCount + " failed=" + failedCount
+                    + " flushes=" + flushCount + " latency=" + lastFlushLatency
+                    + "/" + maxFlushLatency + "ms />";
+        }
+    }
+
+    //
+    //  Runner
+    //
+
+    @Override
+    public boolean process() {
+        if (!isDue()) {
+            return false;
+        }
+        flush();
+        return true;
+    }
+
+    @Override
+    protected void idle() {
+        synchronized (pending) {
+            if (pending.size() >= BATCH_SIZE) {
+                return;
+            }
+            try {
+                pending.wait(FLUSH_INTERVAL);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }
+    }
+
+    /**
+     *  Start a background thread, and flush pending tasks before JVM exits
+     */
+    public void start() {
+        Thread thr = new Thread(this);
+        thr.setDaemon(true);
+        thr.start();
+        thread = thr;
+        if (hook == null) {
+            hook = new Thread(this::flush);
+            Runtime.getRuntime().addShutdownHook(hook);
+        }
+    }
+
+    /**
+     *  Stop the background thread and flush pending tasks
+     */
+    @Override
+    public void stop() {
+        super.stop();
+        synchronized (pending) {
+            pending.notifyAll();
+        }
+        // wait for thread stop
+        Thread thr = thread;
+        if (thr != null) {
+            // waiting 2 seconds for stopping the thread
+            thread = null;
+            try {
+                thr.join(2000);
+            } catch (InterruptedException e) {
+                e.printStackTrace();
+            }
+        }
+        flush();
+        Thread shutdownHook = hook;
+        if (shutdownHook != null) {
+            hook = null;
+            try {
+                Runtime.getRuntime().removeShutdownHook(shutdownHook);
+            } catch (IllegalStateException e) {
+                // JVM is shutting down
+            }
+        }
+    }
+}
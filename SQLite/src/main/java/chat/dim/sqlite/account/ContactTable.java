@@ -30,6 +30,7 @@
  */
 package chat.dim.sqlite.account;
 
+import java.util.ArrayList;
 import java.util.List;
 
 import chat.dim.dbi.ContactDBI;
@@ -61,7 +62,7 @@ public class ContactTable extends DataTableHandler<ID> implements ContactDBI {
                     "id INTEGER PRIMARY KEY AUTOINCREMENT",
                     "user VARCHAR(64)",
                     "contact VARCHAR(64)",
-                    "alias VARCHAR(32))",
+                    "alias VARCHAR(32)",
             };
             if (!createTable(T_CONTACT, fields)) {
                 // db error
@@ -97,30 +98,17 @@ public class ContactTable extends DataTableHandler<ID> implements ContactDBI {
             // db error
             return false;
         }
+        String owner = user.toString();
         // 1. delete old records not contain in current contacts
-        for (ID identifier : oldContacts) {
-            if (contacts.contains(identifier)) {
-                continue;
-            }
-            SQLConditions conditions = new SQLConditions();
-            conditions.addCondition(null, "user", "=", user.toString());
-            conditions.addCondition(SQLConditions.Relation.AND, "contact", "=", identifier.toString());
-            if (delete(T_CONTACT, conditions) < 0) {
-                // db error
-                return false;
-            }
+        List<Object[]> removed = new ArrayList<>();
+        for (ID identifier : difference(oldContacts, contacts)) {
+            removed.add(new Object[]{owner, identifier.toString()});
         }
-        // 2. add new users
-        for (ID identifier : contacts) {
-            if (oldContacts.contains(identifier)) {
-                continue;
-            }
-            Object[] values = {user.toString(), identifier.toString()};
-            if (insert(T_CONTACT, INSERT_COLUMNS, values) < 0) {
-                // db error
-                return false;
-            }
+        // 2. add new contacts
+        List<Object[]> added = new ArrayList<>();
+        for (ID identifier : difference(contacts, oldContacts)) {
+            added.add(new Object[]{owner, identifier.toString()});
         }
-        return true;
+        return batchWrite(T_CONTACT, INSERT_COLUMNS, removed, INSERT_COLUMNS, added);
     }
 }
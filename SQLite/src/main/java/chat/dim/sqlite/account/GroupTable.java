@@ -30,62 +30,159 @@
  */
 package chat.dim.sqlite.account;
 
+import java.sql.SQLException;
+import java.util.ArrayList;
+import java.util.HashSet;
 import java.util.List;
+import java.util.Set;
 
 import chat.dim.dbi.GroupDBI;
 import chat.dim.protocol.ID;
+import chat.dim.sql.SQLConditions;
 import chat.dim.sqlite.DataRowExtractor;
 import chat.dim.sqlite.DataTableHandler;
 import chat.dim.sqlite.DatabaseConnector;
 
+/**
+ *  Group Table
+ *  ~~~~~~~~~~~
+ *
+ *  One row for each (group, role, user), ordered by 'seq',
+ *  indexed by (gid, role), so members of a huge group can be loaded in one query.
+ */
 public class GroupTable extends DataTableHandler<ID> implements GroupDBI {
 
+    private DataRowExtractor<ID> extractor;
+
     public GroupTable(DatabaseConnector connector) {
         super(connector);
+        // lazy load
+        extractor = null;
     }
 
     @Override
     protected DataRowExtractor<ID> getDataRowExtractor() {
-        return null;
+        return extractor;
+    }
+
+    private boolean prepare() {
+        if (extractor == null) {
+            // create table if not exists
+            String[] fields = {
+                    "id INTEGER PRIMARY KEY AUTOINCREMENT",
+                    "gid VARCHAR(64)",
+                    "role INTEGER",
+                    "seq INTEGER",
+                    "uid VARCHAR(64)",
+            };
+            if (!createTable(T_GROUP, fields)) {
+                // db error
+                return false;
+            }
+            String[] keys = {"gid", "role", "seq"};
+            if (!createIndex(T_GROUP + "_gid_role_index", T_GROUP, keys)) {
+                // db error
+                return false;
+            }
+            // prepare data row extractor
+            extractor = (resultSet, index) -> {
+                String uid = resultSet.getString("uid");
+                return ID.parse(uid);
+            };
+        }
+        return true;
+    }
+    private static final String[] SELECT_COLUMNS = {"uid"};
+    private static final String[] INSERT_COLUMNS = {"gid", "role", "seq", "uid"};
+    private static final String T_GROUP = "t_group_user";
+
+    private static final String SQL_DELETE = "DELETE FROM " + T_GROUP + " WHERE gid=? AND role=?";
+
+    // roles
+    private static final int MEMBER = 1;
+    private static final int ASSISTANT = 2;
+    private static final int ADMINISTRATOR = 3;
+
+    private List<ID> getUsers(ID group, int role) {
+        if (!prepare()) {
+            // db error
+            return null;
+        }
+        SQLConditions conditions = new SQLConditions();
+        conditions.addCondition(null, "gid", "=", group.toString());
+        conditions.addCondition(SQLConditions.Relation.AND, "role", "=", role);
+        // WHERE gid='$group' AND role=$role ORDER BY seq
+        return select(T_GROUP, SELECT_COLUMNS, conditions,
+                null, null, "seq", -1, 0);
+    }
+
+    private boolean saveUsers(List<ID> users, ID group, int role) {
+        if (!prepare()) {
+            // db error
+            return false;
+        }
+        String gid = group.toString();
+        List<Object[]> rows = new ArrayList<>(users.size());
+        Set<ID> checked = new HashSet<>();
+        for (ID item : users) {
+            if (!checked.add(item)) {
+                // duplicated
+                continue;
+            }
+            rows.add(new Object[]{gid, role, rows.size(), item.toString()});
+        }
+        // replace all users with this role in one transaction
+        try {
+            executeTransaction(writer -> {
+                writer.executeUpdate(SQL_DELETE, new Object[]{gid, role});
+                batchInsert(writer, T_GROUP, INSERT_COLUMNS, rows);
+            });
+            return true;
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return false;
+        }
     }
 
     @Override
     public ID getFounder(ID group) {
+        // founder is decided by the group meta
         return null;
     }
 
     @Override
     public ID getOwner(ID group) {
+        // owner is decided by the group bulletin
         return null;
     }
 
     @Override
     public List<ID> getMembers(ID group) {
-        return null;
+        return getUsers(group, MEMBER);
     }
 
     @Override
     public boolean saveMembers(List<ID> members, ID group) {
-        return false;
+        return saveUsers(members, group, MEMBER);
     }
 
     @Override
     public List<ID> getAssistants(ID group) {
-        return null;
+        return getUsers(group, ASSISTANT);
     }
 
     @Override
     public boolean saveAssistants(List<ID> bots, ID group) {
-        return false;
+        return saveUsers(bots, group, ASSISTANT);
     }
 
     @Override
     public List<ID> getAdministrators(ID group) {
-        return null;
+        return getUsers(group, ADMINISTRATOR);
     }
 
     @Override
     public boolean saveAdministrators(List<ID> members, ID group) {
-        return false;
+        return saveUsers(members, group, ADMINISTRATOR);
     }
 }
@@ -30,13 +30,12 @@
  */
 package chat.dim.sqlite.account;
 
-import java.util.HashMap;
+import java.sql.SQLException;
+import java.util.ArrayList;
 import java.util.List;
-import java.util.Map;
 
 import chat.dim.dbi.UserDBI;
 import chat.dim.protocol.ID;
-import chat.dim.sql.SQLConditions;
 import chat.dim.sqlite.DataRowExtractor;
 import chat.dim.sqlite.DataTableHandler;
 import chat.dim.sqlite.DatabaseConnector;
@@ -98,50 +97,39 @@ public class UserTable extends DataTableHandler<ID> implements UserDBI {
             return false;
         }
         // 1. delete users not contain in current users
-        for (ID identifier : localUsers) {
-            if (users.contains(identifier)) {
-                continue;
-            }
-            SQLConditions conditions = new SQLConditions();
-            conditions.addCondition(null, "user", "=", identifier.toString());
-            if (delete(T_USER, conditions) < 0) {
-                // db error
-                return false;
-            }
+        List<Object[]> removed = new ArrayList<>();
+        for (ID identifier : difference(localUsers, users)) {
+            removed.add(new Object[]{identifier.toString()});
         }
         // 2. add new users
-        for (ID identifier : users) {
-            if (localUsers.contains(identifier)) {
-                continue;
-            }
-
-            Object[] values = {identifier.toString(), 0};
-            if (insert(T_USER, INSERT_COLUMNS, values) < 0) {
-                // db error
-                return false;
-            }
+        List<Object[]> added = new ArrayList<>();
+        for (ID identifier : difference(users, localUsers)) {
+            added.add(new Object[]{identifier.toString(), 0});
         }
         // 3. check chosen user
-        if (users.size() == 0) {
-            // all users removed?
+        ID first = users.size() == 0 ? null : users.get(0);
+        boolean changed = first != null && (localUsers.size() == 0 || !localUsers.get(0).equals(first));
+        if (removed.isEmpty() && added.isEmpty() && !changed) {
+            // nothing changed
             return true;
         }
-        ID first = users.get(0);
-        if (localUsers.size() == 0 || !localUsers.get(0).equals(first)) {
-            // first user changed
-            Map<String, Object> values = new HashMap<>();
-            values.put("chosen", 0);
-            if (update(T_USER, values, null) < 0) {
-                // db error
-                return false;
-            }
+        try {
+            executeTransaction(writer -> {
+                batchDelete(writer, T_USER, SELECT_COLUMNS, removed);
+                batchInsert(writer, T_USER, INSERT_COLUMNS, added);
+                if (changed) {
+                    // first user changed, update it to be chosen
+                    writer.executeUpdate(SQL_CLEAR_CHOSEN, new Object[0]);
+                    writer.executeUpdate(SQL_SET_CHOSEN, new Object[]{first.toString()});
+                }
+            });
+            return true;
+        } catch (SQLException e) {
+            e.printStackTrace();
+            return false;
         }
-        // update first user to be chosen
-        Map<String, Object> values = new HashMap<>();
-        values.put("chosen", 1);
-        SQLConditions conditions = new SQLConditions();
-        conditions.addCondition(null, "user", "=", first.toString());
-        return update(T_USER, values, null) > 0;
     }
+    private static final String SQL_CLEAR_CHOSEN = "UPDATE " + T_USER + " SET chosen=0";
+    private static final String SQL_SET_CHOSEN = "UPDATE " + T_USER + " SET chosen=1 WHERE user=?";
 
 }
@@ -30,31 +30,108 @@
  */
 package chat.dim.sqlite.message;
 
+import java.util.Collections;
+import java.util.List;
+
 import chat.dim.crypto.SymmetricKey;
 import chat.dim.dbi.CipherKeyDBI;
+import chat.dim.format.JSON;
 import chat.dim.protocol.ID;
+import chat.dim.sql.SQLConditions;
 import chat.dim.sqlite.DataRowExtractor;
 import chat.dim.sqlite.DataTableHandler;
 import chat.dim.sqlite.DatabaseConnector;
 
 public class CipherKeyTable extends DataTableHandler<SymmetricKey> implements CipherKeyDBI {
 
+    public static long EXPIRES = 7 * 24 * 3600 * 1000L;  // milliseconds
+
+    private DataRowExtractor<SymmetricKey> extractor;
+
     public CipherKeyTable(DatabaseConnector connector) {
         super(connector);
+        // lazy load
+        extractor = null;
     }
 
     @Override
     protected DataRowExtractor<SymmetricKey> getDataRowExtractor() {
-        return null;
+        return extractor;
     }
 
+    private boolean prepare() {
+        if (extractor == null) {
+            // create table if not exists
+            String[] fields = {
+                    "id INTEGER PRIMARY KEY AUTOINCREMENT",
+                    "sender VARCHAR(64)",
+                    "receiver VARCHAR(64)",
+                    "pwd TEXT",
+                    "time INTEGER",
+            };
+            if (!createTable(T_CIPHER_KEY, fields)) {
+                // db error
+                return false;
+            }
+            String[] keys = {"sender", "receiver"};
+            if (!createIndex(T_CIPHER_KEY + "_direction_index", T_CIPHER_KEY, keys)) {
+                // db error
+                return false;
+            }
+            // prepare data row extractor
+            extractor = (resultSet, index) -> {
+                String json = resultSet.getString("pwd");
+                Object key = JSON.decode(json);
+                return SymmetricKey.parse(key);
+            };
+        }
+        return true;
+    }
+    private static final String[] SELECT_COLUMNS = {"pwd"};
+    private static final String[] DELETE_COLUMNS = {"sender", "receiver"};
+    private static final String[] INSERT_COLUMNS = {"sender", "receiver", "pwd", "time"};
+    private static final String T_CIPHER_KEY = "t_cipher_key";
+
     @Override
     public SymmetricKey getCipherKey(ID sender, ID receiver, boolean generate) {
-        return null;
+        // NOTICE: new key should be generated by the caller
+        if (!prepare()) {
+            // db error
+            return null;
+        }
+        long expired = System.currentTimeMillis() - EXPIRES;
+        SQLConditions conditions = new SQLConditions();
+        conditions.addCondition(null, "sender", "=", sender.toString());
+        conditions.addCondition(SQLConditions.Relation.AND, "receiver", "=", receiver.toString());
+        conditions.addCondition(SQLConditions.Relation.AND, "time", ">", expired);
+        // WHERE sender='$sender' AND receiver='$receiver' AND time>$expired ORDER BY id DESC LIMIT 1
+        List<SymmetricKey> results = select(T_CIPHER_KEY, SELECT_COLUMNS, conditions,
+                null, null, "id DESC", 1, 0);
+        // return first record only
+        return results == null || results.size() == 0 ? null : results.get(0);
     }
 
     @Override
     public void cacheCipherKey(ID sender, ID receiver, SymmetricKey key) {
+        saveCipherKey(sender, receiver, key);
+    }
 
+    /**
+     *  Replace the message key for this direction
+     *
+     * @return false on DB error
+     */
+    public boolean saveCipherKey(ID sender, ID receiver, SymmetricKey key) {
+        if (!prepare()) {
+            // db error
+            return false;
+        }
+        String from = sender.toString();
+        String to = receiver.toString();
+        String json = JSON.encode(key);
+        long now = System.currentTimeMillis();
+        List<Object[]> removed = Collections.singletonList(new Object[]{from, to});
+        List<Object[]> added = Collections.singletonList(new Object[]{from, to, json, now});
+        return batchWrite(T_CIPHER_KEY, DELETE_COLUMNS, removed, INSERT_COLUMNS, added);
     }
 }